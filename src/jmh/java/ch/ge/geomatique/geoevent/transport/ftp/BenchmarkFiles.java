@@ -0,0 +1,71 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The BenchmarkFiles class builds the content of the files read by the
+ * benchmarks : csv lines, as sent by the real sources
+ */
+final class BenchmarkFiles
+{
+    private BenchmarkFiles()
+    {
+    }
+
+    // Lines of about 64 bytes, the first one is a header
+    static byte[] lines(int size)
+    {
+	byte[] content = new byte[size];
+	byte[] header = "id,timestamp,latitude,longitude,speed,heading,status\n".getBytes(US_ASCII);
+	int position = Math.min(header.length, size);
+
+	System.arraycopy(header, 0, content, 0, position);
+
+	for (int id = 0; position < size; id++)
+	{
+	    byte[] line = String.format("%08d,2021-03-25T10:15:30,46.20439,6.14316,42.5,180,OK\n", id).getBytes(US_ASCII);
+	    int length = Math.min(line.length, size - position);
+
+	    System.arraycopy(line, 0, content, position, length);
+	    position += length;
+	}
+
+	return content;
+    }
+
+    // Delete a folder and its content
+    static void delete(Path folder) throws IOException
+    {
+	if (folder == null || !Files.exists(folder))
+	    return;
+
+	try (Stream<Path> paths = Files.walk(folder))
+	{
+	    paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+	}
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.ges.transport.util.XmlTransportDefinition;
+
+/**
+ * The ReceiveBenchmark class measures the delivery of a downloaded file into
+ * the geoevent workflow : reading of the local file, skipping of the header
+ * lines and copy into the buffers given to the adapter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReceiveBenchmark
+{
+    // Size in bytes of the delivered file
+    @Param({ "1024", "1048576", "104857600" })
+    private int fileSize;
+
+    @Param({ "0", "1" })
+    private int numberOfLinesToSkip;
+
+    @Param({ FTPInboundTransport.FILE_DELIVERY, FTPInboundTransport.STREAM_DELIVERY, FTPInboundTransport.MAPPED_DELIVERY })
+    private String deliveryMode;
+
+    private FTPInboundTransport transport;
+    private Path localFolder;
+    private String localFile;
+    // Number of bytes given to the adapter
+    private long received;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception
+    {
+	localFolder = Files.createTempDirectory("ftp-benchmark-receive");
+	localFile = localFolder.resolve("file.txt").toString();
+	Files.write(localFolder.resolve("file.txt"), BenchmarkFiles.lines(fileSize));
+
+	transport = new FTPInboundTransport(new XmlTransportDefinition(FTPInboundTransport.class.getResourceAsStream("/ftp-inboundtransport-definition.xml")));
+	transport.getProperty("serverType").setValue("ftp");
+	transport.getProperty("server").setValue("localhost");
+	transport.getProperty("localFolder").setValue(localFolder + "/");
+	transport.getProperty("numberOfLinesToSkip").setValue(numberOfLinesToSkip);
+	transport.getProperty("deliveryMode").setValue(deliveryMode);
+	transport.applyProperties();
+
+	// The adapter only consumes the bytes
+	transport.setTransportListener((buffer, channelId) -> {
+	    received += buffer.remaining();
+	    buffer.position(buffer.limit());
+	});
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+	BenchmarkFiles.delete(localFolder);
+    }
+
+    @Benchmark
+    public long receive() throws IOException
+    {
+	received = 0;
+
+	if (deliveryMode.equals(FTPInboundTransport.STREAM_DELIVERY))
+	    transport.receiveStream(localFile, "");
+	else if (deliveryMode.equals(FTPInboundTransport.MAPPED_DELIVERY))
+	    transport.receiveMapped(localFile, "");
+	else
+	    transport.receive(localFile, "");
+
+	return received;
+    }
+}
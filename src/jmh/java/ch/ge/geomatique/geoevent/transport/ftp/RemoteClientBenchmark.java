@@ -0,0 +1,176 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.sftp.SftpSubsystemFactory;
+import org.mockftpserver.fake.FakeFtpServer;
+import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.filesystem.DirectoryEntry;
+import org.mockftpserver.fake.filesystem.FileEntry;
+import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.UnixFakeFileSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The RemoteClientBenchmark class measures a whole polling cycle of the ftp
+ * and sftp clients : listing of the server folder and download of every file
+ * into the local folder. The servers run in the same process.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RemoteClientBenchmark
+{
+    static final String USER = "user";
+    static final String PASSWORD = "password";
+    static final int FTP_PORT = 2021;
+    static final int SFTP_PORT = 2022;
+    // Biggest server folder in bytes : the biggest counts and sizes are not
+    // crossed, a single trial would fill the disk
+    static final long MAX_FOLDER_SIZE = 8L << 30;
+
+    @Param({ "ftp", "sftp" })
+    private String serverType;
+
+    // Number of files in the server folder
+    @Param({ "1", "100", "10000" })
+    private int fileCount;
+
+    // Size in bytes of each file : 1 KB, 1 MB, 100 MB and 500 MB
+    @Param({ "1024", "1048576", "104857600", "524288000" })
+    private int fileSize;
+
+    // Number of sftp read requests sent without waiting for the answers
+    @Param({ "16" })
+    private int bulkRequests;
+
+    @Param({ "false" })
+    private boolean compression;
+
+    // Size in bytes of the socket buffers, 0 for the system default
+    @Param({ "0" })
+    private int socketBufferSize;
+
+    private FakeFtpServer ftpServer;
+    private SshServer sftpServer;
+    // Folder of the sftp server
+    private Path serverFolder;
+    // Folder where the files are downloaded
+    private Path localFolder;
+    private RemoteClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException
+    {
+	if ((long) fileCount * fileSize > MAX_FOLDER_SIZE)
+	    throw new IllegalArgumentException("Server folder too big, trial skipped. (fileCount:" + fileCount + ", fileSize:" + fileSize + ").");
+
+	byte[] content = BenchmarkFiles.lines(fileSize);
+	localFolder = Files.createTempDirectory("ftp-benchmark-local");
+
+	if (serverType.equals("ftp"))
+	{
+	    FileSystem fileSystem = new UnixFakeFileSystem();
+	    fileSystem.add(new DirectoryEntry("/data"));
+
+	    for (int i = 0; i < fileCount; i++)
+	    {
+		FileEntry file = new FileEntry("/data/file" + i + ".txt");
+		file.setContents(content);
+		fileSystem.add(file);
+	    }
+
+	    ftpServer = new FakeFtpServer();
+	    ftpServer.setServerControlPort(FTP_PORT);
+	    ftpServer.addUserAccount(new UserAccount(USER, PASSWORD, "/"));
+	    ftpServer.setFileSystem(fileSystem);
+	    ftpServer.start();
+
+	    client = new FtpClient("localhost", USER, PASSWORD, "/data/", "*.txt", localFolder + "/", FTP_PORT);
+	} else
+	{
+	    serverFolder = Files.createTempDirectory("ftp-benchmark-server");
+
+	    for (int i = 0; i < fileCount; i++)
+		Files.write(serverFolder.resolve("file" + i + ".txt"), content);
+
+	    sftpServer = SshServer.setUpDefaultServer();
+	    sftpServer.setPort(SFTP_PORT);
+	    sftpServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+	    sftpServer.setPasswordAuthenticator((user, password, session) -> USER.equals(user) && PASSWORD.equals(password));
+	    sftpServer.setSubsystemFactories(Collections.singletonList(new SftpSubsystemFactory()));
+	    sftpServer.setFileSystemFactory(new VirtualFileSystemFactory(serverFolder));
+	    sftpServer.start();
+
+	    SFtpClient sftpClient = new SFtpClient("localhost", USER, PASSWORD, "", "*.txt", localFolder + "/", "", SFTP_PORT);
+	    sftpClient.setBulkRequests(bulkRequests);
+	    sftpClient.setCompression(compression);
+	    sftpClient.setSocketBufferSize(socketBufferSize);
+	    client = sftpClient;
+	}
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+    {
+	if (client != null)
+	    client.close();
+
+	if (ftpServer != null)
+	    ftpServer.stop();
+
+	if (sftpServer != null)
+	    sftpServer.stop();
+
+	BenchmarkFiles.delete(serverFolder);
+	BenchmarkFiles.delete(localFolder);
+    }
+
+    // One polling cycle, the connections are kept open between the cycles
+    @Benchmark
+    public List<RemoteFile> downloadFiles() throws IOException
+    {
+	return client.downloadFiles(RemoteFileFilter.ALL);
+    }
+}
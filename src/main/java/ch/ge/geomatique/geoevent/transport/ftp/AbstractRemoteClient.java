@@ -0,0 +1,684 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * The AbstractRemoteClient class holds what the ftp and sftp clients have in
+ * common : the pooled connections, the selection and the order of the files
+ * and the parallel downloads. The subclasses implement the protocol.
+ */
+public abstract class AbstractRemoteClient<C> implements RemoteClient
+{
+    static final int DEFAULT_BUFFER_SIZE = 8192;
+    // Actions run on a remote file once it has been received : none, delete
+    // it, rename it with a suffix or move it into an archive folder
+    static final String NO_ACTION = "none";
+    static final String DELETE_ACTION = "delete";
+    static final String RENAME_ACTION = "rename";
+    static final String MOVE_ACTION = "move";
+    // Suffix of the local files being downloaded, renamed to the file name once complete
+    static final String STAGING_SUFFIX = ".ftp-staging";
+
+    // Server name
+    protected final String server;
+    // Folder on the server where the file is stored
+    protected final String serverFolder;
+    // The file format of the files
+    protected final String fileFormat;
+    // Folder where the file will be downloaded
+    protected final String localFolder;
+    // Connections kept open between the polling cycles
+    protected final ConnectionPool<C> pool;
+    // Size in bytes of the socket send and receive buffers, 0 for the system default
+    protected int socketBufferSize = 0;
+    // Size in bytes of the buffer used to write the downloaded files
+    protected int bufferSize = DEFAULT_BUFFER_SIZE;
+    // Selection of the files on their name, size and age, applied while listing
+    protected RemoteFileSelector selector = RemoteFileSelector.ALL;
+    // Selection given to the client, before the files left by the post action are rejected
+    private RemoteFileSelector configuredSelector = RemoteFileSelector.ALL;
+
+    // Compute the checksum of the files downloaded into the local folder
+    private boolean checksums;
+    // Maximum number of files downloaded at the same time
+    private int parallelism = 1;
+    // Number of files downloaded in advance while the previous ones are given to the listener
+    private int downloadAhead = 0;
+    // Executor running the downloads in the background, null to download in the calling thread
+    private ExecutorService executor;
+    // Order in which the files are downloaded and returned, null to keep the listing order
+    private Comparator<RemoteFile> order;
+    // Maximum number of files downloaded in one call, the first ones in the order (0 = no limit)
+    private int maxFiles = 0;
+    // Action run on each remote file once it has been received
+    private String postAction = NO_ACTION;
+    // Suffix added to the name of the received files by the rename action
+    private String renameSuffix = "";
+    // Folder where the received files are moved by the move action, ending with /
+    private String archiveFolder = "";
+    // Suffix of the marker file uploaded once a file is complete, empty to not wait for a marker
+    private String markerSuffix = "";
+    // Only download the files whose size and modification time did not change since the previous listing
+    private boolean stableListing;
+    // Size and modification time of the files at the previous listing, by name
+    private volatile Map<String, RemoteFile> previousListing = Collections.emptyMap();
+    // Journal of the files between their download and their post-processing, null for none
+    private DownloadJournal journal;
+    // Timings and counters of the connections, listings and downloads
+    private TransportMetrics metrics = new TransportMetrics();
+
+    /**
+     * An operation run with a pooled connection
+     */
+    protected interface Operation<C, R>
+    {
+	R run(C connection) throws IOException;
+    }
+
+    protected AbstractRemoteClient(String server, String serverFolder, String fileFormat, String localFolder)
+    {
+	this.server = server;
+	this.serverFolder = serverFolder;
+	this.fileFormat = fileFormat;
+	this.localFolder = localFolder;
+	this.pool = new ConnectionPool<>(new ConnectionPool.Factory<C>()
+	{
+	    @Override
+	    public C create() throws IOException
+	    {
+		long start = System.nanoTime();
+		C connection = connect();
+
+		metrics.connected(System.nanoTime() - start);
+		return connection;
+	    }
+
+	    @Override
+	    public boolean isAlive(C connection)
+	    {
+		return AbstractRemoteClient.this.isAlive(connection);
+	    }
+
+	    @Override
+	    public void destroy(C connection)
+	    {
+		disconnect(connection);
+	    }
+	});
+    }
+
+    // Time in milliseconds after which an unused connection is reopened (0 = no limit)
+    public void setIdleTimeout(long idleTimeout)
+    {
+	pool.setIdleTimeout(idleTimeout);
+    }
+
+    // Time in milliseconds after which a connection is reopened (0 = no limit)
+    public void setMaxLifetime(long maxLifetime)
+    {
+	pool.setMaxLifetime(maxLifetime);
+    }
+
+    // Size in bytes of the socket send and receive buffers, 0 for the system
+    // default. Bigger buffers keep a link with a high latency busy.
+    public void setSocketBufferSize(int socketBufferSize)
+    {
+	this.socketBufferSize = Math.max(0, socketBufferSize);
+    }
+
+    // Size in bytes of the buffer used to write the downloaded files
+    public void setBufferSize(int bufferSize)
+    {
+	this.bufferSize = bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_SIZE;
+    }
+
+    // Compute the digest of the files while they are downloaded into the local folder
+    public void setChecksums(boolean checksums)
+    {
+	this.checksums = checksums;
+    }
+
+    // Download the files in the background with the executor, up to
+    // parallelism files at the same time, each one with its own connection
+    public void setParallelism(int parallelism, ExecutorService executor)
+    {
+	this.parallelism = Math.max(1, parallelism);
+	this.executor = executor;
+	pool.setMaxSize(this.parallelism);
+    }
+
+    // Number of files downloaded in advance while the previous ones are given
+    // to the listener. The downloads wait while the listener is late.
+    public void setDownloadAhead(int downloadAhead)
+    {
+	this.downloadAhead = Math.max(0, downloadAhead);
+    }
+
+    // Order in which the files are downloaded and returned, null to keep the listing order
+    public void setOrder(Comparator<RemoteFile> order)
+    {
+	this.order = order;
+    }
+
+    // Select the listed files on their name, size and age
+    public void setSelector(RemoteFileSelector selector)
+    {
+	this.configuredSelector = selector != null ? selector : RemoteFileSelector.ALL;
+	updateSelector();
+    }
+
+    // Maximum number of files downloaded in one call (0 = no limit). The
+    // other files are left for the next calls, so a big backlog is read in
+    // bounded batches.
+    public void setMaxFiles(int maxFiles)
+    {
+	this.maxFiles = Math.max(0, maxFiles);
+    }
+
+    // Only download a file once the marker file with the suffix is on the
+    // server, named after the whole file name (data.csv.done) or the file
+    // name without its extension (data.done). Empty to not wait for a marker.
+    public void setMarkerSuffix(String markerSuffix)
+    {
+	this.markerSuffix = markerSuffix != null ? markerSuffix : "";
+	updateSelector();
+    }
+
+    // Only download the files which were already listed with the same size
+    // and modification time at the previous listing, so that the files
+    // still being uploaded are left for the next calls
+    public void setStableListing(boolean stableListing)
+    {
+	this.stableListing = stableListing;
+    }
+
+    // Action run on each remote file once it has been received : none,
+    // delete, rename (with the suffix) or move (into the archive folder)
+    public void setPostAction(String postAction, String renameSuffix, String archiveFolder)
+    {
+	this.postAction = postAction;
+	this.renameSuffix = renameSuffix;
+	this.archiveFolder = archiveFolder;
+	updateSelector();
+    }
+
+    // Record the download, the staging and the cleaning of each file in the
+    // journal. The files the journal knows as delivered are not downloaded
+    // again, they are only post-processed.
+    public void setJournal(DownloadJournal journal)
+    {
+	this.journal = journal;
+    }
+
+    // Reject the markers and the files renamed by the post action, which are
+    // in the server folder too and would be listed by a broad file format
+    private void updateSelector()
+    {
+	selector = configuredSelector;
+
+	if (!markerSuffix.isEmpty())
+	    selector = selector.withIgnoredSuffix(markerSuffix);
+
+	if (postAction.equals(RENAME_ACTION) && !renameSuffix.isEmpty())
+	    selector = selector.withIgnoredSuffix(renameSuffix);
+    }
+
+    // Test if the received files are deleted, renamed or moved, so that the
+    // server folder may be left empty
+    protected boolean isPostProcessed()
+    {
+	return !postAction.equals(NO_ACTION);
+    }
+
+    // Metrics updated by the client, shared with the transport
+    public void setMetrics(TransportMetrics metrics)
+    {
+	this.metrics = metrics;
+    }
+
+    public TransportMetrics getMetrics()
+    {
+	return metrics;
+    }
+
+    @Override
+    public List<RemoteFile> downloadFiles(RemoteFileFilter filter, FileDownloadListener listener) throws IOException
+    {
+	if (executor != null)
+	    return downloadInBackground(withConnection(connection -> cleanDelivered(connection, listFiles(connection, filter))), listener);
+
+	return withConnection(connection -> {
+	    // List of all files downloaded
+	    List<RemoteFile> downloadedFiles = new ArrayList<>();
+
+	    // Download each file
+	    for (RemoteFile file : cleanDelivered(connection, listFiles(connection, filter)))
+	    {
+		if (timedDownload(connection, file))
+		{
+		    if (listener.downloaded(file))
+			clean(connection, file);
+		    downloadedFiles.add(file);
+		}
+	    }
+
+	    return downloadedFiles;
+	});
+    }
+
+    @Override
+    public List<RemoteFile> streamFiles(RemoteFileFilter filter, FileStreamHandler handler) throws IOException
+    {
+	return withConnection(connection -> {
+	    // List of all files sent to the handler
+	    List<RemoteFile> streamedFiles = new ArrayList<>();
+
+	    for (RemoteFile file : listFiles(connection, filter))
+	    {
+		long offset = handler.getOffset(file);
+		long start = System.nanoTime();
+
+		if (stream(connection, file, handler))
+		{
+		    metrics.downloaded(System.nanoTime() - start, Math.max(0, file.getSize() - offset));
+		    postProcess(connection, file);
+		    streamedFiles.add(file);
+		}
+	    }
+
+	    return streamedFiles;
+	});
+    }
+
+    @Override
+    public String getFolderFingerprint() throws IOException
+    {
+	return withConnection(this::fingerprint);
+    }
+
+    @Override
+    public void closeIdleConnections()
+    {
+	pool.closeIdle();
+    }
+
+    @Override
+    public void close()
+    {
+	pool.close();
+    }
+
+    // Run an operation with a pooled connection. The connection is closed if
+    // the operation fails, since it is then in an unknown state.
+    protected <R> R withConnection(Operation<C, R> operation) throws IOException
+    {
+	C connection = pool.borrow();
+
+	try
+	{
+	    R result = operation.run(connection);
+
+	    pool.release(connection);
+	    connection = null;
+
+	    return result;
+
+	} catch (IOException e)
+	{
+	    throw new IOException(getProtocol() + " Transport Exception error. (server:" + server + ").", e);
+	} finally
+	{
+	    if (connection != null)
+		pool.invalidate(connection);
+	}
+    }
+
+    // Download the files with the executor and give them to the listener in
+    // the order of the list. Only the files within the window following the
+    // one the listener waits for are downloaded, so a slow listener holds back
+    // the downloads instead of filling the local folder.
+    private List<RemoteFile> downloadInBackground(List<RemoteFile> files, FileDownloadListener listener) throws IOException
+    {
+	List<Future<Boolean>> results = new ArrayList<>();
+	List<RemoteFile> downloadedFiles = new ArrayList<>();
+	int window = parallelism + downloadAhead;
+
+	try
+	{
+	    for (int i = 0; i < files.size(); i++)
+	    {
+		// Start the downloads up to the end of the window
+		while (results.size() < files.size() && results.size() < i + window)
+		{
+		    RemoteFile file = files.get(results.size());
+		    results.add(executor.submit(() -> withConnection(connection -> timedDownload(connection, file))));
+		}
+
+		// Files downloading or waiting to be given to the listener
+		metrics.setQueueDepth(results.size() - i);
+
+		if (results.get(i).get())
+		{
+		    RemoteFile file = files.get(i);
+
+		    if (listener.downloaded(file))
+			withConnection(connection -> {
+			    clean(connection, file);
+			    return null;
+			});
+		    downloadedFiles.add(file);
+		}
+	    }
+
+	    return downloadedFiles;
+
+	} catch (ExecutionException e)
+	{
+	    if (e.getCause() instanceof IOException)
+		throw (IOException) e.getCause();
+
+	    throw new IOException(getProtocol() + " Transport Exception error. (server:" + server + ").", e.getCause());
+	} catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while downloading files. (server:" + server + ").", e);
+	} finally
+	{
+	    // Stop the other downloads after an error
+	    for (Future<Boolean> result : results)
+		result.cancel(true);
+
+	    metrics.setQueueDepth(0);
+	}
+    }
+
+    // Path of the server folder itself, without the trailing separator
+    protected String getFolderPath()
+    {
+	if (serverFolder.isEmpty())
+	    return ".";
+
+	return serverFolder.length() > 1 && serverFolder.endsWith("/") ? serverFolder.substring(0, serverFolder.length() - 1) : serverFolder;
+    }
+
+    // Run the post-processing action on a received file and on its marker,
+    // with the connection used to download it
+    private void postProcess(C connection, RemoteFile file) throws IOException
+    {
+	postProcess(connection, file.getName());
+
+	if (file.getMarker() == null || !isPostProcessed())
+	    return;
+
+	try
+	{
+	    postProcess(connection, file.getMarker());
+	} catch (IOException e)
+	{
+	    // A marker named without the extension (data.done) may be shared
+	    // by several files and already post-processed with one of them
+	}
+    }
+
+    // Run the post-processing action on a file of the server folder
+    private void postProcess(C connection, String name) throws IOException
+    {
+	String path = serverFolder + name;
+
+	if (postAction.equals(DELETE_ACTION))
+	    delete(connection, path);
+	else if (postAction.equals(RENAME_ACTION))
+	    rename(connection, path, path + renameSuffix);
+	else if (postAction.equals(MOVE_ACTION))
+	    rename(connection, path, archiveFolder + name);
+    }
+
+    // Post-process a received file and remove it from the journal
+    private void clean(C connection, RemoteFile file) throws IOException
+    {
+	postProcess(connection, file);
+
+	if (journal != null)
+	    journal.remove(serverFolder + file.getName());
+    }
+
+    // Clean the files delivered before a restart, without downloading them
+    // again, and return the other files
+    private List<RemoteFile> cleanDelivered(C connection, List<RemoteFile> files) throws IOException
+    {
+	if (journal == null)
+	    return files;
+
+	List<RemoteFile> toDownload = new ArrayList<>();
+
+	for (RemoteFile file : files)
+	{
+	    if (journal.isDelivered(serverFolder + file.getName(), file))
+		clean(connection, file);
+	    else
+		toDownload.add(file);
+	}
+
+	return toDownload;
+    }
+
+    // Download the file under its staging name, then rename it atomically,
+    // so that a file with its own name in the local folder is always
+    // complete. Records the download time.
+    private boolean timedDownload(C connection, RemoteFile file) throws IOException
+    {
+	String path = serverFolder + file.getName();
+	Path stagingFile = Paths.get(localFolder + file.getName() + STAGING_SUFFIX);
+	long start = System.nanoTime();
+	boolean downloaded = false;
+
+	if (journal != null)
+	    journal.update(path, file, DownloadJournal.DOWNLOADING);
+
+	try
+	{
+	    downloaded = download(connection, file);
+	} finally
+	{
+	    if (!downloaded)
+	    {
+		Files.deleteIfExists(stagingFile);
+
+		if (journal != null)
+		    journal.remove(path);
+	    }
+	}
+
+	// The server refused to send the file
+	if (!downloaded)
+	    return false;
+
+	Files.move(stagingFile, Paths.get(localFolder + file.getName()), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	metrics.downloaded(System.nanoTime() - start, file.getSize());
+
+	if (journal != null)
+	    journal.update(path, file, DownloadJournal.STAGED);
+
+	return true;
+    }
+
+    // Get the wanted files accepted by the filter, sorted if an order is set
+    // and limited to the first maxFiles files
+    private List<RemoteFile> listFiles(C connection, RemoteFileFilter filter) throws IOException
+    {
+	List<RemoteFile> remoteFiles = new ArrayList<>();
+	long start = System.nanoTime();
+	List<RemoteFile> listedFiles = list(connection);
+	Set<String> markers = markerSuffix.isEmpty() ? null : new HashSet<>(listNames(connection, "*" + markerSuffix));
+	Map<String, RemoteFile> listing = stableListing ? new HashMap<>() : Collections.emptyMap();
+
+	for (RemoteFile file : listedFiles)
+	{
+	    // The filter sees the incomplete files too, they are still on the server
+	    if (filter.accept(file) && isComplete(file, markers))
+		remoteFiles.add(file);
+
+	    if (stableListing)
+		listing.put(file.getName(), file);
+	}
+
+	previousListing = listing;
+
+	metrics.listed(System.nanoTime() - start, listedFiles.size(), remoteFiles.size());
+
+	if (maxFiles > 0 && remoteFiles.size() > maxFiles)
+	    return order != null ? first(remoteFiles, maxFiles) : new ArrayList<>(remoteFiles.subList(0, maxFiles));
+
+	if (order != null)
+	    remoteFiles.sort(order);
+
+	return remoteFiles;
+    }
+
+    // Test if the file has finished being uploaded : its marker is on the
+    // server and it did not change since the previous listing. The marker
+    // found is kept with the file to be post-processed with it.
+    private boolean isComplete(RemoteFile file, Set<String> markers)
+    {
+	if (markers != null)
+	{
+	    String marker = file.getName() + markerSuffix;
+
+	    if (!markers.contains(marker))
+		marker = FilenameUtils.removeExtension(file.getName()) + markerSuffix;
+
+	    if (!markers.contains(marker))
+		return false;
+
+	    file.setMarker(marker);
+	}
+
+	if (!stableListing)
+	    return true;
+
+	RemoteFile previous = previousListing.get(file.getName());
+
+	return previous != null && previous.getSize() == file.getSize() && previous.getModifiedTime() == file.getModifiedTime();
+    }
+
+    // Get the first count files in the order, sorted, without sorting the
+    // whole list : the heap only keeps the count first files seen so far
+    private List<RemoteFile> first(List<RemoteFile> files, int count)
+    {
+	PriorityQueue<RemoteFile> heap = new PriorityQueue<>(count + 1, order.reversed());
+
+	for (RemoteFile file : files)
+	{
+	    heap.add(file);
+
+	    // Drop the last file in the order
+	    if (heap.size() > count)
+		heap.poll();
+	}
+
+	List<RemoteFile> firstFiles = new ArrayList<>(heap);
+	firstFiles.sort(order);
+
+	return firstFiles;
+    }
+
+    // Open the local copy of the remote file, under its staging name until
+    // the download is complete. With checksums, the digest of the bytes
+    // written is set into the remote file when the copy is closed, so the
+    // file is not read again to compute it.
+    protected OutputStream openLocalFile(RemoteFile file) throws IOException
+    {
+	OutputStream output = new BufferedOutputStream(new FileOutputStream(localFolder + file.getName() + STAGING_SUFFIX), bufferSize);
+
+	if (!checksums)
+	    return output;
+
+	MessageDigest hash = DigestCache.newHash();
+
+	return new DigestOutputStream(output, hash)
+	{
+	    @Override
+	    public void close() throws IOException
+	    {
+		super.close();
+		file.setChecksum(DigestCache.digest(hash.digest()));
+	    }
+	};
+    }
+
+    // Name of the protocol used in the error messages
+    protected abstract String getProtocol();
+
+    // Open and log in a new connection
+    protected abstract C connect() throws IOException;
+
+    // Liveness probe run before a pooled connection is reused
+    protected abstract boolean isAlive(C connection);
+
+    // Close the connection, ignoring errors
+    protected abstract void disconnect(C connection);
+
+    // Get the modification time of the server folder, null if unknown
+    protected abstract String fingerprint(C connection) throws IOException;
+
+    // Get the wanted files in the server folder
+    protected abstract List<RemoteFile> list(C connection) throws IOException;
+
+    // Get the names of the files matching the pattern in the server folder,
+    // without selecting them
+    protected abstract List<String> listNames(C connection, String pattern) throws IOException;
+
+    // Download the file into the local folder. Returns false if the server refused to send it.
+    protected abstract boolean download(C connection, RemoteFile file) throws IOException;
+
+    // Send the file to the handler while it is downloaded. Returns false if
+    // the server refused to send it.
+    protected abstract boolean stream(C connection, RemoteFile file, FileStreamHandler handler) throws IOException;
+
+    // Delete the remote file
+    protected abstract void delete(C connection, String path) throws IOException;
+
+    // Rename or move the remote file
+    protected abstract void rename(C connection, String from, String to) throws IOException;
+}
@@ -0,0 +1,299 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ConnectionPool class keeps (s)ftp connections open between polling
+ * cycles. A connection is checked with a liveness probe before being handed
+ * out and is replaced when it is dead, idle for too long or too old. The pool
+ * is guarded by a lock instead of a monitor, so that a virtual thread waiting
+ * for a connection does not pin its carrier thread.
+ */
+public class ConnectionPool<T> implements Closeable
+{
+    /**
+     * Creates, probes and closes the pooled connections
+     */
+    public interface Factory<T>
+    {
+	// Open and log in a new connection
+	T create() throws IOException;
+
+	// Liveness probe (NOOP, pwd...) run before a pooled connection is reused
+	boolean isAlive(T connection);
+
+	// Close the connection, ignoring errors
+	void destroy(T connection);
+    }
+
+    // Default time in milliseconds during which a released connection is reused without probe
+    static final long PROBE_INTERVAL = 1000L;
+
+    private final Factory<T> factory;
+    // Connections not used since this time in milliseconds are closed (0 = no limit)
+    private long idleTimeout = 0;
+    // Connections older than this time in milliseconds are closed (0 = no limit)
+    private long maxLifetime = 0;
+    // Connections released more recently than this time in milliseconds are not probed
+    private long probeInterval = PROBE_INTERVAL;
+    // Maximum number of connections opened at the same time
+    private int maxSize = 1;
+
+    // Connections waiting to be borrowed, the most recently used first
+    private final Deque<T> idle = new ArrayDeque<>();
+    // Creation time of every open connection
+    private final Map<T, Long> createdAt = new IdentityHashMap<>();
+    // Last release time of the idle connections
+    private final Map<T, Long> releasedAt = new IdentityHashMap<>();
+    // Connections being opened outside the lock
+    private int pending;
+    private boolean closed;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when a connection is released or closed
+    private final Condition changed = lock.newCondition();
+
+    public ConnectionPool(Factory<T> factory)
+    {
+	this.factory = factory;
+    }
+
+    public void setIdleTimeout(long idleTimeout)
+    {
+	this.idleTimeout = idleTimeout;
+    }
+
+    public void setMaxLifetime(long maxLifetime)
+    {
+	this.maxLifetime = maxLifetime;
+    }
+
+    public void setProbeInterval(long probeInterval)
+    {
+	this.probeInterval = probeInterval;
+    }
+
+    public void setMaxSize(int maxSize)
+    {
+	lock.lock();
+	try
+	{
+	    this.maxSize = Math.max(1, maxSize);
+	    changed.signalAll();
+	} finally
+	{
+	    lock.unlock();
+	}
+    }
+
+    // Get a live connection, reusing an idle one when possible
+    public T borrow() throws IOException
+    {
+	while (true)
+	{
+	    T connection;
+	    boolean expired;
+	    boolean recentlyUsed = false;
+
+	    lock.lock();
+	    try
+	    {
+		if (closed)
+		    throw new IOException("Connection pool closed.");
+
+		connection = idle.pollFirst();
+
+		if (connection == null)
+		{
+		    if (createdAt.size() + pending >= maxSize)
+		    {
+			waitForRelease();
+			continue;
+		    }
+		    // Reserve the slot before connecting outside the lock
+		    pending++;
+		    expired = false;
+		} else
+		{
+		    expired = isExpired(connection);
+		    recentlyUsed = System.currentTimeMillis() - releasedAt.get(connection) < probeInterval;
+		    releasedAt.remove(connection);
+		}
+	    } finally
+	    {
+		lock.unlock();
+	    }
+
+	    if (connection == null)
+		return open();
+
+	    if (!expired && (recentlyUsed || factory.isAlive(connection)))
+		return connection;
+
+	    invalidate(connection);
+	}
+    }
+
+    // Give back a connection which can be used again
+    public void release(T connection)
+    {
+	lock.lock();
+	try
+	{
+	    if (!closed && createdAt.containsKey(connection))
+	    {
+		releasedAt.put(connection, System.currentTimeMillis());
+		idle.addFirst(connection);
+		changed.signalAll();
+		return;
+	    }
+	} finally
+	{
+	    lock.unlock();
+	}
+	invalidate(connection);
+    }
+
+    // Close a connection which is broken or in an unknown state
+    public void invalidate(T connection)
+    {
+	lock.lock();
+	try
+	{
+	    createdAt.remove(connection);
+	    releasedAt.remove(connection);
+	    idle.remove(connection);
+	    changed.signalAll();
+	} finally
+	{
+	    lock.unlock();
+	}
+	factory.destroy(connection);
+    }
+
+    // Number of connections currently open
+    public int size()
+    {
+	lock.lock();
+	try
+	{
+	    return createdAt.size();
+	} finally
+	{
+	    lock.unlock();
+	}
+    }
+
+    // Close the idle connections, the borrowed ones stay open and the pool
+    // opens new connections when needed
+    public void closeIdle()
+    {
+	Deque<T> toClose;
+
+	lock.lock();
+	try
+	{
+	    toClose = new ArrayDeque<>(idle);
+	    idle.clear();
+	} finally
+	{
+	    lock.unlock();
+	}
+
+	for (T connection : toClose)
+	    invalidate(connection);
+    }
+
+    @Override
+    public void close()
+    {
+	lock.lock();
+	try
+	{
+	    closed = true;
+	    changed.signalAll();
+	} finally
+	{
+	    lock.unlock();
+	}
+
+	closeIdle();
+    }
+
+    private T open() throws IOException
+    {
+	T connection = null;
+
+	try
+	{
+	    connection = factory.create();
+	    return connection;
+	} finally
+	{
+	    lock.lock();
+	    try
+	    {
+		pending--;
+		if (connection != null)
+		    createdAt.put(connection, System.currentTimeMillis());
+		changed.signalAll();
+	    } finally
+	    {
+		lock.unlock();
+	    }
+	}
+    }
+
+    // Must be called with the lock held
+    private boolean isExpired(T connection)
+    {
+	long now = System.currentTimeMillis();
+	Long created = createdAt.get(connection);
+	Long released = releasedAt.get(connection);
+
+	if (created == null)
+	    return true;
+
+	if (maxLifetime > 0 && now - created > maxLifetime)
+	    return true;
+
+	return idleTimeout > 0 && released != null && now - released > idleTimeout;
+    }
+
+    private void waitForRelease() throws IOException
+    {
+	try
+	{
+	    changed.await();
+	} catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while waiting for a connection.", e);
+	}
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * The Decompression class decompresses the gzip, zip and deflate files,
+ * recognized by their extension, while they are read. Nothing is written to
+ * the disk.
+ */
+public final class Decompression
+{
+    // Size of the buffer of compressed bytes
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private Decompression()
+    {
+    }
+
+    // Test if the file is compressed, from its extension
+    public static boolean isCompressed(String fileName)
+    {
+	String name = fileName.toLowerCase(Locale.ROOT);
+
+	return name.endsWith(".gz") || name.endsWith(".zip") || name.endsWith(".deflate") || name.endsWith(".zz");
+    }
+
+    // Get the decompressed content of the input, or the input itself if the file is not compressed
+    public static InputStream open(String fileName, InputStream input) throws IOException
+    {
+	String name = fileName.toLowerCase(Locale.ROOT);
+
+	if (name.endsWith(".gz"))
+	    return new GZIPInputStream(input, BUFFER_SIZE);
+
+	if (name.endsWith(".zip"))
+	    return new ZipEntriesInputStream(new ZipInputStream(new BufferedInputStream(input, BUFFER_SIZE)));
+
+	// Zlib format
+	if (name.endsWith(".deflate") || name.endsWith(".zz"))
+	    return new InflaterInputStream(new BufferedInputStream(input, BUFFER_SIZE));
+
+	return input;
+    }
+
+    /**
+     * The content of all the files of a zip archive, one after the other
+     */
+    private static class ZipEntriesInputStream extends InputStream
+    {
+	private final ZipInputStream zip;
+	// An entry is open
+	private boolean started;
+	private boolean finished;
+	private final byte[] single = new byte[1];
+
+	ZipEntriesInputStream(ZipInputStream zip)
+	{
+	    this.zip = zip;
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+	    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException
+	{
+	    while (!finished)
+	    {
+		if (started)
+		{
+		    int count = zip.read(bytes, offset, length);
+
+		    if (count >= 0)
+			return count;
+		}
+
+		nextEntry();
+	    }
+
+	    return -1;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+	    zip.close();
+	}
+
+	// Open the next file of the archive, skipping the folders
+	private void nextEntry() throws IOException
+	{
+	    ZipEntry entry = zip.getNextEntry();
+
+	    while (entry != null && entry.isDirectory())
+		entry = zip.getNextEntry();
+
+	    started = entry != null;
+	    finished = entry == null;
+	}
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The DigestCache class remembers the digests (first 64 bits of the SHA-256)
+ * of the contents recently delivered, so that a file whose content was already
+ * delivered, under the same or another name, is not delivered again. Only
+ * the most recently seen digests are kept, for a limited time. The cache is
+ * kept in an append-only log which is replayed at startup and rewritten when
+ * it holds too many old records.
+ */
+public class DigestCache implements Closeable
+{
+    // Digests not seen for this time in milliseconds are forgotten (0 = no limit)
+    private final long timeToLive;
+    // Time the content was last seen, by digest, the least recently seen first
+    private final Map<Long, Long> entries;
+    // The log of the contents seen
+    private final RecordLog log;
+
+    public DigestCache(Path file, int maxEntries, long timeToLive) throws IOException
+    {
+	this.timeToLive = timeToLive;
+	this.entries = new LinkedHashMap<Long, Long>(16, 0.75f, true)
+	{
+	    private static final long serialVersionUID = 1L;
+
+	    @Override
+	    protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest)
+	    {
+		return size() > Math.max(1, maxEntries);
+	    }
+	};
+	this.log = new RecordLog(file, this::read, this::write);
+    }
+
+    // Create the hash computed over the contents
+    public static MessageDigest newHash()
+    {
+	try
+	{
+	    return MessageDigest.getInstance("SHA-256");
+	} catch (NoSuchAlgorithmException e)
+	{
+	    // Every java runtime supports SHA-256
+	    throw new IllegalStateException(e);
+	}
+    }
+
+    // Digest of a content : the first 64 bits of its hash
+    public static long digest(byte[] hash)
+    {
+	return ByteBuffer.wrap(hash).getLong();
+    }
+
+    // Test if the content was seen recently
+    public synchronized boolean contains(long digest)
+    {
+	Long seen = entries.get(digest);
+
+	return seen != null && !isExpired(seen, System.currentTimeMillis());
+    }
+
+    // Remember the content as seen now
+    public synchronized void add(long digest) throws IOException
+    {
+	long now = System.currentTimeMillis();
+
+	entries.put(digest, now);
+	log.append(output -> {
+	    output.writeLong(digest);
+	    output.writeLong(now);
+	}, entries.size());
+    }
+
+    public synchronized int size()
+    {
+	return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+	log.close();
+    }
+
+    private boolean isExpired(long seen, long now)
+    {
+	return timeToLive > 0 && now - seen > timeToLive;
+    }
+
+    // Replay a record of the log
+    private void read(DataInputStream input) throws IOException
+    {
+	long digest = input.readLong();
+
+	// Keep the order in which the contents were seen
+	entries.remove(digest);
+	entries.put(digest, input.readLong());
+    }
+
+    // Write the digests still valid into the rewritten log
+    private int write(DataOutputStream output) throws IOException
+    {
+	long now = System.currentTimeMillis();
+
+	entries.values().removeIf(seen -> isExpired(seen, now));
+
+	for (Map.Entry<Long, Long> entry : entries.entrySet())
+	{
+	    output.writeLong(entry.getKey());
+	    output.writeLong(entry.getValue());
+	}
+
+	return entries.size();
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The DownloadJournal class records the state of each file between its
+ * download and the post-processing of the remote file : downloading, staged
+ * (complete in the local folder), delivered, then cleaned, when the file
+ * leaves the journal. The journal is an append-only log written before each
+ * step, which is replayed at startup so that the work interrupted by a
+ * restart is finished without downloading or delivering a file twice.
+ */
+public class DownloadJournal implements Closeable
+{
+    // States of a file
+    static final byte CLEANED = 0;
+    static final byte DOWNLOADING = 1;
+    static final byte STAGED = 2;
+    static final byte DELIVERED = 3;
+
+    /**
+     * A file in the journal, with the size and the modification time of the
+     * remote file when it was downloaded
+     */
+    public static class Entry
+    {
+	private final String path;
+	private final byte state;
+	private final RemoteFile file;
+
+	Entry(String path, byte state, RemoteFile file)
+	{
+	    this.path = path;
+	    this.state = state;
+	    this.file = file;
+	}
+
+	// Remote path of the file
+	public String getPath()
+	{
+	    return path;
+	}
+
+	public byte getState()
+	{
+	    return state;
+	}
+
+	public RemoteFile getFile()
+	{
+	    return file;
+	}
+    }
+
+    // Files in the journal, by remote path, in the order of their first record
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // The log of the steps of the files
+    private final RecordLog log;
+
+    public DownloadJournal(Path file) throws IOException
+    {
+	log = new RecordLog(file, this::read, this::write);
+    }
+
+    // Record the new state of the file
+    public synchronized void update(String path, RemoteFile remoteFile, byte state) throws IOException
+    {
+	entries.put(path, new Entry(path, state, remoteFile));
+	append(path, state, remoteFile.getSize(), remoteFile.getModifiedTime());
+    }
+
+    // The file is cleaned, it leaves the journal
+    public synchronized void remove(String path) throws IOException
+    {
+	if (entries.remove(path) != null)
+	    append(path, CLEANED, 0, 0);
+    }
+
+    // Test if this version of the remote file was delivered, but not cleaned
+    public synchronized boolean isDelivered(String path, RemoteFile remoteFile)
+    {
+	Entry entry = entries.get(path);
+
+	return entry != null && entry.getState() == DELIVERED && entry.getFile().getSize() == remoteFile.getSize() && entry.getFile().getModifiedTime() == remoteFile.getModifiedTime();
+    }
+
+    // Get the files in the journal
+    public synchronized List<Entry> getEntries()
+    {
+	return new ArrayList<>(entries.values());
+    }
+
+    // Forget the files which are no longer on the server
+    public synchronized void retain(Set<String> paths) throws IOException
+    {
+	Iterator<String> iterator = entries.keySet().iterator();
+
+	while (iterator.hasNext())
+	{
+	    String path = iterator.next();
+
+	    if (!paths.contains(path))
+	    {
+		iterator.remove();
+		append(path, CLEANED, 0, 0);
+	    }
+	}
+    }
+
+    public synchronized int size()
+    {
+	return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+	log.close();
+    }
+
+    private void append(String path, byte state, long size, long modifiedTime) throws IOException
+    {
+	log.append(output -> write(output, path, state, size, modifiedTime), entries.size());
+    }
+
+    // Replay a record of the log
+    private void read(DataInputStream input) throws IOException
+    {
+	String path = input.readUTF();
+	byte state = input.readByte();
+	RemoteFile remoteFile = new RemoteFile(path.substring(path.lastIndexOf('/') + 1), input.readLong(), input.readLong());
+
+	if (state == CLEANED)
+	    entries.remove(path);
+	else
+	    entries.put(path, new Entry(path, state, remoteFile));
+    }
+
+    // Write the current entries into the rewritten log
+    private int write(DataOutputStream output) throws IOException
+    {
+	for (Entry entry : entries.values())
+	    write(output, entry.getPath(), entry.getState(), entry.getFile().getSize(), entry.getFile().getModifiedTime());
+
+	return entries.size();
+    }
+
+    private static void write(DataOutputStream output, String path, byte state, long size, long modifiedTime) throws IOException
+    {
+	output.writeUTF(path);
+	output.writeByte(state);
+	output.writeLong(size);
+	output.writeLong(modifiedTime);
+    }
+}
@@ -18,21 +18,38 @@
  */
 package ch.ge.geomatique.geoevent.transport.ftp;
 
-import java.nio.ByteBuffer;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.BufferOverflowException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.util.Arrays;
-import java.util.Date;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import javax.management.ObjectName;
 
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 
 import com.esri.ges.core.component.ComponentException;
 import com.esri.ges.core.component.RunningState;
@@ -58,7 +75,27 @@ public class FTPInboundTransport extends InboundTransportBase implements Runnabl
     static final long SECOND_MILLISECONDS = 1000L;
     static final int FTP_DEFAULT_PORT = 21;
     static final String SQL_EXCEPTION_DELETE_FILE = "FTP connector. Impossible to delete file : ";
-    static final int RETURN_CHAR = 10;
+    static final int KILOBYTE = 1024;
+    // Delivery modes of the downloaded files
+    static final String FILE_DELIVERY = "file";
+    static final String STREAM_DELIVERY = "stream";
+    static final String MAPPED_DELIVERY = "mapped";
+    // Number of bytes read again in append mode to check that a file was not replaced
+    static final int TAIL_LENGTH = 256;
+    // Orders of the downloaded files
+    static final String ORDER_BY_NAME = "name";
+    static final String ORDER_BY_DATE = "date";
+    // Prefix of the file, in the local folder, holding the state of the delivered remote files
+    static final String STATE_INDEX_PREFIX = ".ftp-transport-";
+    // Prefix of the file, in the local folder, holding the digests of the delivered contents
+    static final String DIGEST_CACHE_PREFIX = ".ftp-transport-digests-";
+    // Prefix of the file, in the local folder, holding the journal of the downloads
+    static final String JOURNAL_PREFIX = ".ftp-transport-journal-";
+    // Schedule modes of the polling cycles
+    static final String FIXED_RATE = "rate";
+    static final String FIXED_DELAY = "delay";
+    // Domain of the JMX metrics of the transports
+    static final String METRICS_DOMAIN = "ch.ge.geomatique.geoevent.transport.ftp";
 
     // Server type : ftp or sftp
     private String serverType = "";
@@ -81,11 +118,132 @@ public class FTPInboundTransport extends InboundTransportBase implements Runnabl
     // Delete files in the local folder
     private boolean deleteFiles;
     // This is the time in seconds between successive task executions
-    private int frequency = 0;
+    private double frequency = 0;
     // Number of lines to skip in the downloaded file
     private int numberOfLinesToSkip = 0;
+    // Time in seconds after which an unused connection is reopened (0 = no limit)
+    private int idleTimeout = 0;
+    // Time in seconds after which a connection is reopened (0 = no limit)
+    private int maxLifetime = 0;
+    // Send the whole file at once (file) or by chunks of complete lines (stream)
+    private String deliveryMode = FILE_DELIVERY;
+    // Size in kilobytes of the chunks sent in stream mode
+    private int chunkSize = KILOBYTE;
+    // In mapped mode, files smaller than this size in kilobytes are read into the java heap
+    private int mappedThreshold = KILOBYTE;
+    // Size in kilobytes of the windows mapped into memory in mapped mode
+    private int mappedWindow = 64 * KILOBYTE;
+    // Ftp transfer type : ascii, binary or auto (binary for the compressed files)
+    private String transferType = FtpClient.AUTO_TRANSFER;
+    // Decompress the gzip, zip and deflate files while they are read
+    private boolean decompress;
+    // Seconds between two NOOP on the ftp control connection during a download (0 = disabled)
+    private int ftpKeepAlive = 0;
+    // Use UTF-8 file names when the ftp server supports it
+    private boolean ftpAutodetectUTF8;
+    // List the ftp folder with MLSD when the server supports it
+    private boolean ftpUseMlsd = true;
+    // Number of sftp read requests sent without waiting for the answers
+    private int sftpBulkRequests = SFtpClient.DEFAULT_BULK_REQUESTS;
+    // Ciphers proposed to the sftp server, the preferred first (empty = JSch default)
+    private String sftpCiphers = "";
+    // Compress the data sent by the sftp server
+    private boolean sftpCompression;
+    // Size in kilobytes of the socket buffers (0 = system default)
+    private int socketBufferSize = 0;
+    // Size in kilobytes of the buffer used to write the downloaded files
+    private int transferBufferSize = 8;
+    // Allocate the stream buffer outside of the java heap
+    private boolean directBuffer;
+    // Send the remote files while they are downloaded, without the local folder
+    private boolean inFlight;
+    // Write the files sent in flight into the local folder for audit
+    private boolean keepLocalCopy;
+    // Only download the files which are new or changed since their last delivery
+    private boolean incremental;
+    // The remote files only grow : only download and send the new lines
+    private boolean appendMode;
+    // Send only the lines which are new or changed since the last delivery of the file
+    private boolean recordDeltaMode;
+    // Journal each download, so that a restart neither downloads nor delivers a file twice
+    private boolean downloadJournal;
+    // Do not deliver again a file whose content was recently delivered
+    private boolean deduplicate;
+    // Number of contents remembered
+    private int deduplicationCacheSize = 1000;
+    // Time in seconds during which a content is remembered (0 = no limit)
+    private int deduplicationTimeToLive = 86400;
+    // Maximum number of files downloaded at the same time
+    private int parallelDownloads = 1;
+    // Order in which the files are downloaded and sent : name, date or none
+    private String fileOrder = "";
+    // Number of files downloaded in advance while the previous ones are sent
+    private int downloadAhead = 0;
+    // Action on the remote files once they are received : none, delete, rename or move
+    private String postAction = AbstractRemoteClient.NO_ACTION;
+    // Suffix added to the name of the received files by the rename action
+    private String renameSuffix = ".done";
+    // Folder on the server where the received files are moved by the move action
+    private String archiveFolder = "";
+    // Maximum number of files downloaded and sent in one cycle (0 = no limit)
+    private int maxFilesPerCycle = 0;
+    // Regular expression the file names must also match (empty = any name)
+    private String fileRegex = "";
+    // Bounds of the size in bytes of the files (0 = no limit)
+    private long minFileSize = 0;
+    private long maxFileSize = 0;
+    // Bounds in seconds of the time since the last modification of the files (0 = no limit)
+    private long minFileAge = 0;
+    private long maxFileAge = 0;
+    // Suffixes of the files still being uploaded, which are never downloaded (.part,.tmp)
+    private String ignoredSuffixes = "";
+    // Suffix of the marker file uploaded once a file is complete (empty = no marker)
+    private String markerSuffix = "";
+    // Only download the files which did not change since the previous cycle
+    private boolean stableListing;
+    // The frequency is counted from the start (rate) or the end (delay) of each cycle
+    private String scheduleMode = FIXED_RATE;
+    // Maximum random delay in seconds before the first cycle
+    private int startupJitter = 0;
+
+    // Poll more often when files change and less often when nothing changes
+    private boolean adaptiveFrequency;
+    // Bounds in seconds of the time between successive task executions in adaptive mode
+    private double minFrequency = 1;
+    private double maxFrequency = 600;
+
+    // Skip the listing while the modification time of the server folder does not change
+    private boolean folderFingerprint;
+
+    // Endpoints polled in multi-source mode, empty to poll the server of the transport
+    private String sources = "";
+    // Maximum number of sources polled at the same time in multi-source mode
+    private int sourceThreads = 4;
+    // Maximum number of connections opened at the same time to one server in multi-source mode
+    private int maxConnectionsPerHost = 2;
+    // Threads polling the sources and downloading the files : platform or virtual
+    private String threadMode = PollThreads.PLATFORM_THREADS;
 
-    Timer timer;
+    // Runs the polling cycles, one at a time
+    private PollScheduler scheduler;
+    // Timings and counters of the polling cycles, kept when the transport is restarted
+    private final TransportMetrics metrics = new TransportMetrics();
+    // Name of the metrics registered in JMX
+    private ObjectName metricsName;
+    // The polled folders, created at the first cycle and closed when the transport stops
+    private List<Source> polledSources;
+    // Threads polling the sources in multi-source mode
+    private ExecutorService sourceExecutor;
+    // Connections left to each server in multi-source mode, by server name
+    private final Map<String, Semaphore> hostPermits = new HashMap<>();
+    // Lock held while a buffer is sent into the geoevent workflow
+    private final Object deliveryLock = new Object();
+    // Threads downloading the files in parallel, shared by the sources
+    private ExecutorService downloadExecutor;
+    // The readers which send the files by chunks in stream mode and map them
+    // into memory in mapped mode, one per polling thread
+    private final ThreadLocal<LineChunkReader> chunkReaders = ThreadLocal.withInitial(() -> new LineChunkReader(chunkSize * KILOBYTE, directBuffer));
+    private final ThreadLocal<MappedFileReader> mappedReaders = ThreadLocal.withInitial(() -> new MappedFileReader((long) mappedWindow * KILOBYTE));
 
     @Override
     public synchronized void start()
@@ -118,10 +276,32 @@ public class FTPInboundTransport extends InboundTransportBase implements Runnabl
     {
 	try
 	{
-	    if (this.timer != null)
+	    if (this.scheduler != null)
+		scheduler.stop();
+
+	    if (this.metricsName != null)
+	    {
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+		metricsName = null;
+	    }
+
+	    if (this.sourceExecutor != null)
+	    {
+		sourceExecutor.shutdownNow();
+		sourceExecutor = null;
+	    }
+
+	    if (this.polledSources != null)
+	    {
+		for (Source source : polledSources)
+		    source.close();
+		polledSources = null;
+	    }
+
+	    if (this.downloadExecutor != null)
 	    {
-		timer.cancel();
-		timer.purge();
+		downloadExecutor.shutdownNow();
+		downloadExecutor = null;
 	    }
 	} catch (Exception ex)
 	{
@@ -172,13 +352,144 @@ public class FTPInboundTransport extends InboundTransportBase implements Runnabl
 	    localFolder = properties.get("localFolder").getValueAsString();
 
 	if (properties.get("frequency").getValue() != null)
-	    frequency = (Integer) properties.get("frequency").getValue();
+	    frequency = ((Number) properties.get("frequency").getValue()).doubleValue();
 
 	if (properties.get("numberOfLinesToSkip").getValue() != null)
 	    numberOfLinesToSkip = (Integer) properties.get("numberOfLinesToSkip").getValue();
 
 	if (properties.get("port").getValue() != null)
 	    port = (Integer) properties.get("port").getValue();
+
+	if (properties.get("idleTimeout").getValue() != null)
+	    idleTimeout = (Integer) properties.get("idleTimeout").getValue();
+
+	if (properties.get("maxLifetime").getValue() != null)
+	    maxLifetime = (Integer) properties.get("maxLifetime").getValue();
+
+	if (properties.get("deliveryMode").getValueAsString() != null)
+	    deliveryMode = properties.get("deliveryMode").getValueAsString();
+
+	if (properties.get("chunkSize").getValue() != null)
+	    chunkSize = (Integer) properties.get("chunkSize").getValue();
+
+	if (properties.get("mappedThreshold").getValue() != null)
+	    mappedThreshold = (Integer) properties.get("mappedThreshold").getValue();
+
+	if (properties.get("mappedWindow").getValue() != null)
+	    mappedWindow = (Integer) properties.get("mappedWindow").getValue();
+
+	if (properties.get("transferType").getValueAsString() != null)
+	    transferType = properties.get("transferType").getValueAsString();
+
+	decompress = (Boolean) properties.get("decompress").getValue();
+
+	if (properties.get("ftpKeepAlive").getValue() != null)
+	    ftpKeepAlive = (Integer) properties.get("ftpKeepAlive").getValue();
+
+	ftpAutodetectUTF8 = (Boolean) properties.get("ftpAutodetectUTF8").getValue();
+
+	ftpUseMlsd = (Boolean) properties.get("ftpUseMlsd").getValue();
+
+	if (properties.get("sftpBulkRequests").getValue() != null)
+	    sftpBulkRequests = (Integer) properties.get("sftpBulkRequests").getValue();
+
+	if (properties.get("sftpCiphers").getValueAsString() != null)
+	    sftpCiphers = properties.get("sftpCiphers").getValueAsString();
+
+	sftpCompression = (Boolean) properties.get("sftpCompression").getValue();
+
+	if (properties.get("socketBufferSize").getValue() != null)
+	    socketBufferSize = (Integer) properties.get("socketBufferSize").getValue();
+
+	if (properties.get("transferBufferSize").getValue() != null)
+	    transferBufferSize = (Integer) properties.get("transferBufferSize").getValue();
+
+	directBuffer = (Boolean) properties.get("directBuffer").getValue();
+	inFlight = (Boolean) properties.get("inFlight").getValue();
+	keepLocalCopy = (Boolean) properties.get("keepLocalCopy").getValue();
+	incremental = (Boolean) properties.get("incremental").getValue();
+	appendMode = (Boolean) properties.get("appendMode").getValue();
+	recordDeltaMode = (Boolean) properties.get("recordDelta").getValue();
+	downloadJournal = (Boolean) properties.get("downloadJournal").getValue();
+	deduplicate = (Boolean) properties.get("deduplicate").getValue();
+
+	if (properties.get("deduplicationCacheSize").getValue() != null)
+	    deduplicationCacheSize = (Integer) properties.get("deduplicationCacheSize").getValue();
+
+	if (properties.get("deduplicationTimeToLive").getValue() != null)
+	    deduplicationTimeToLive = (Integer) properties.get("deduplicationTimeToLive").getValue();
+
+	if (properties.get("parallelDownloads").getValue() != null)
+	    parallelDownloads = (Integer) properties.get("parallelDownloads").getValue();
+
+	if (properties.get("fileOrder").getValueAsString() != null)
+	    fileOrder = properties.get("fileOrder").getValueAsString();
+
+	if (properties.get("downloadAhead").getValue() != null)
+	    downloadAhead = (Integer) properties.get("downloadAhead").getValue();
+
+	if (properties.get("postAction").getValueAsString() != null)
+	    postAction = properties.get("postAction").getValueAsString();
+
+	if (properties.get("renameSuffix").getValueAsString() != null)
+	    renameSuffix = properties.get("renameSuffix").getValueAsString();
+
+	if (properties.get("archiveFolder").getValueAsString() != null)
+	    archiveFolder = properties.get("archiveFolder").getValueAsString();
+
+	if (properties.get("maxFilesPerCycle").getValue() != null)
+	    maxFilesPerCycle = (Integer) properties.get("maxFilesPerCycle").getValue();
+
+	if (properties.get("fileRegex").getValueAsString() != null)
+	    fileRegex = properties.get("fileRegex").getValueAsString();
+
+	if (properties.get("minFileSize").getValue() != null)
+	    minFileSize = ((Number) properties.get("minFileSize").getValue()).longValue();
+
+	if (properties.get("maxFileSize").getValue() != null)
+	    maxFileSize = ((Number) properties.get("maxFileSize").getValue()).longValue();
+
+	if (properties.get("minFileAge").getValue() != null)
+	    minFileAge = ((Number) properties.get("minFileAge").getValue()).longValue();
+
+	if (properties.get("maxFileAge").getValue() != null)
+	    maxFileAge = ((Number) properties.get("maxFileAge").getValue()).longValue();
+
+	if (properties.get("ignoredSuffixes").getValueAsString() != null)
+	    ignoredSuffixes = properties.get("ignoredSuffixes").getValueAsString();
+
+	if (properties.get("markerSuffix").getValueAsString() != null)
+	    markerSuffix = properties.get("markerSuffix").getValueAsString().trim();
+
+	stableListing = (Boolean) properties.get("stableListing").getValue();
+
+	if (properties.get("scheduleMode").getValueAsString() != null)
+	    scheduleMode = properties.get("scheduleMode").getValueAsString();
+
+	if (properties.get("startupJitter").getValue() != null)
+	    startupJitter = (Integer) properties.get("startupJitter").getValue();
+
+	adaptiveFrequency = (Boolean) properties.get("adaptiveFrequency").getValue();
+
+	if (properties.get("minFrequency").getValue() != null)
+	    minFrequency = ((Number) properties.get("minFrequency").getValue()).doubleValue();
+
+	if (properties.get("maxFrequency").getValue() != null)
+	    maxFrequency = ((Number) properties.get("maxFrequency").getValue()).doubleValue();
+
+	folderFingerprint = (Boolean) properties.get("folderFingerprint").getValue();
+
+	if (properties.get("sources").getValueAsString() != null)
+	    sources = properties.get("sources").getValueAsString().trim();
+
+	if (properties.get("sourceThreads").getValue() != null)
+	    sourceThreads = (Integer) properties.get("sourceThreads").getValue();
+
+	if (properties.get("maxConnectionsPerHost").getValue() != null)
+	    maxConnectionsPerHost = (Integer) properties.get("maxConnectionsPerHost").getValue();
+
+	if (properties.get("threadMode").getValueAsString() != null)
+	    threadMode = properties.get("threadMode").getValueAsString();
 	
 	deleteFiles = (Boolean) properties.get("deleteFiles").getValue();;
     }
@@ -191,21 +502,17 @@ public class FTPInboundTransport extends InboundTransportBase implements Runnabl
 	    applyProperties();
 	    setRunningState(RunningState.STARTED);
 
-	    // Timer task which connects to a ftp server and downloads a file
-	    TimerTask running = new TimerTask()
-	    {
-		public void run()
-		{
-		    downloadFiles();
-		}
-	    };
+	    // Connects to the (s)ftp server and downloads the files at each cycle
+	    scheduler = new PollScheduler("ftp-transport-" + (sources.isEmpty() ? server : "sources"), this::downloadFiles, Math.round(frequency * SECOND_MILLISECONDS), !scheduleMode.equals(FIXED_DELAY));
 
-	    timer = new Timer();
+	    if (adaptiveFrequency)
+		scheduler.setAdaptive(Math.round(minFrequency * SECOND_MILLISECONDS), Math.round(maxFrequency * SECOND_MILLISECONDS));
 
-	    // Get the current time
-	    LocalDateTime date = LocalDateTime.now();
+	    if (isVirtual() && !PollThreads.isVirtualSupported())
+		LOGGER.info("FTP connector. Virtual threads are not supported by this java runtime, platform threads are used.");
 
-	    timer.scheduleAtFixedRate(running, Date.from(date.atZone(ZoneId.systemDefault()).toInstant()), frequency * SECOND_MILLISECONDS);
+	    registerMetrics();
+	    scheduler.start(startupJitter * SECOND_MILLISECONDS);
 
 	} catch (Exception ex)
 	{
@@ -214,137 +521,862 @@ public class FTPInboundTransport extends InboundTransportBase implements Runnabl
 	}
     }
 
-    // Download a file from a (s)ftp server
-    private void downloadFiles()
+    // Timings and counters of the connections, listings, downloads and deliveries
+    public TransportMetrics getMetrics()
+    {
+	return metrics;
+    }
+
+    // Timing statistics of the polling cycles, null before the transport is started
+    public PollStatistics getStatistics()
+    {
+	PollScheduler current = scheduler;
+
+	return current != null ? current.getStatistics() : null;
+    }
+
+    // Download the files of every source from the (s)ftp servers
+    void downloadFiles()
     {
-	if (password.isEmpty())
-	    password = "PASS";
+	long start = System.nanoTime();
+	Source source = null;
+
+	try
+	{
+	    List<Source> current = getSources();
+	    ExecutorService executor = sourceExecutor;
+	    boolean changed;
+
+	    if (executor == null)
+	    {
+		source = current.get(0);
+		changed = source.downloadFiles();
+	    } else
+		changed = downloadInParallel(current, executor);
+
+	    if (scheduler != null)
+		scheduler.adapt(changed);
+	} catch (InterruptedException e)
+	{
+	    // The transport is stopping
+	    Thread.currentThread().interrupt();
+	} catch (IOException e)
+	{
+	    metrics.error(e);
+	    LOGGER.error((source != null ? source.getProtocol() : "FTP") + " Transport Exception error. (server:" + (source != null ? source.endpoint.getServer() : server) + ").", e);
+	    stop();
+	    setRunningState(RunningState.ERROR);
+	} catch (RuntimeException e)
+	{
+	    // Logged by the scheduler, which keeps running the next executions
+	    metrics.error(e);
+	    throw e;
+	} finally
+	{
+	    metrics.cycle(System.nanoTime() - start);
+	}
+    }
+
+    // Poll the sources with the source threads and wait for all of them.
+    // Returns true if one of them found new or changed files.
+    private boolean downloadInParallel(List<Source> current, ExecutorService executor) throws InterruptedException
+    {
+	List<Future<Boolean>> results = new ArrayList<>();
+	boolean changed = false;
+
+	try
+	{
+	    for (Source source : current)
+		results.add(executor.submit(source::poll));
+
+	    for (Future<Boolean> result : results)
+		changed |= result.get();
+
+	    return changed;
+
+	} catch (ExecutionException e)
+	{
+	    // Source.poll() only lets the unexpected errors through
+	    throw new IllegalStateException(e.getCause());
+	} finally
+	{
+	    for (Future<Boolean> result : results)
+		result.cancel(true);
+	}
+    }
+
+    // Get the polled sources : the server of the transport, or the endpoints
+    // of the sources property in multi-source mode
+    private synchronized List<Source> getSources() throws IOException
+    {
+	if (polledSources != null)
+	    return polledSources;
 
 	// Make sure paths ends with / character
 	if (!localFolder.endsWith("/"))
 	    localFolder += "/";
 
-	if (serverFolder.length() > 0 && !serverFolder.endsWith("/"))
-	    serverFolder += "/";
+	if (archiveFolder.length() > 0 && !archiveFolder.endsWith("/"))
+	    archiveFolder += "/";
 
-	if (serverType.equals("ftp"))
+	List<Source> list = new ArrayList<>();
+
+	if (sources.isEmpty())
+	    list.add(new Source(new SourceEndpoint(serverType, user, server, port, serverFolder, fileFormat, null), password, localFolder, ""));
+	else
 	{
-	    downloadFTPFiles();
-	} else
+	    for (SourceEndpoint endpoint : SourceEndpoint.parseList(sources))
+	    {
+		// Each source has its own local folder, so that files with the same name do not collide
+		String folder = localFolder + endpoint.getServer() + "-" + Integer.toHexString(endpoint.getId().hashCode()) + "/";
+
+		Files.createDirectories(Paths.get(folder));
+		list.add(new Source(endpoint, getPassword(endpoint), folder, endpoint.getId()));
+	    }
+
+	    // Number of sources of each server
+	    Map<String, Integer> hostSources = new HashMap<>();
+
+	    for (Source source : list)
+		hostSources.merge(source.endpoint.getServer(), 1, Integer::sum);
+
+	    for (Source source : list)
+		source.sharedHost = hostSources.get(source.endpoint.getServer()) * source.getConnections() > Math.max(1, maxConnectionsPerHost);
+
+	    sourceExecutor = PollThreads.newExecutor("ftp-transport-source", Math.min(sourceThreads, list.size()), isVirtual());
+	}
+
+	polledSources = list;
+
+	return polledSources;
+    }
+
+    // Get the password of a source from the variable named by its
+    // credentials : an environment variable or a system property
+    private String getPassword(SourceEndpoint endpoint)
+    {
+	String credentials = endpoint.getCredentials();
+
+	if (credentials == null)
+	    return password;
+
+	String value = System.getenv(credentials);
+
+	if (value == null)
+	    value = System.getProperty(credentials);
+
+	if (value == null)
+	    throw new IllegalArgumentException("FTP connector. Credentials not found. (source:" + endpoint.getId() + ",credentials:" + credentials + ").");
+
+	return value;
+    }
+
+    // Parse the ignored suffixes, separated by spaces, commas or semicolons
+    private List<String> getIgnoredSuffixes()
+    {
+	List<String> suffixes = new ArrayList<>();
+
+	for (String suffix : ignoredSuffixes.trim().split("[\\s,;]+"))
 	{
-	    downloadSFTPFiles();
+	    if (!suffix.isEmpty())
+		suffixes.add(suffix);
 	}
+
+	return suffixes;
+    }
+
+    // Run the polls and the downloads on virtual threads
+    private boolean isVirtual()
+    {
+	return threadMode.equals(PollThreads.VIRTUAL_THREADS);
     }
 
-    // Download the file from a classic FTP server
-    private void downloadFTPFiles()
+    // Get the connections left to a server, shared by its sources
+    private synchronized Semaphore getHostPermits(String host)
     {
-	FtpClient ftpClient = new FtpClient(server, user, password, serverFolder, fileFormat, localFolder, port);
+	return hostPermits.computeIfAbsent(host, key -> new Semaphore(Math.max(1, maxConnectionsPerHost)));
+    }
 
+    // Get the threads downloading the files in parallel, created at the first use
+    private synchronized ExecutorService getDownloadExecutor()
+    {
+	if (downloadExecutor == null)
+	{
+	    // The sources polled at the same time share the threads
+	    int threads = parallelDownloads * (sources.isEmpty() ? 1 : Math.max(1, sourceThreads));
+
+	    downloadExecutor = PollThreads.newExecutor("ftp-transport-download-" + server, threads, isVirtual());
+	}
+
+	return downloadExecutor;
+    }
+
+    // Publish the metrics in JMX, named after the source of the files
+    private void registerMetrics()
+    {
 	try
 	{
-	    List<String> files = ftpClient.downloadFiles();
+	    String source = sources.isEmpty() ? serverType + "://" + server + ":" + port + "/" + serverFolder + fileFormat : "sources/" + Integer.toHexString(sources.hashCode());
+	    ObjectName name = new ObjectName(METRICS_DOMAIN + ":type=FTPInboundTransport,name=" + ObjectName.quote(source));
 
-	    // Send the files received
-	    for (String file : files)
+	    if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
 	    {
-		String localFileName = localFolder + file;
-		receive(localFileName);
-		
-		if (deleteFiles)
-		    Files.delete(Paths.get(localFileName));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+		metricsName = name;
+	    } else
+		LOGGER.info("FTP connector. Metrics already registered by another transport : " + name);
+	} catch (Exception e)
+	{
+	    LOGGER.error("FTP connector. Unable to register the metrics : ", e);
+	}
+    }
+
+    // Convert the downloaded file as bytes and send them into the geoevent
+    // workflow
+    void receive(String localFile, String channelId) throws IOException
+    {
+	receive(localFile, sender(channelId));
+    }
+
+    // Convert the downloaded file as bytes and give them to the sender
+    void receive(String localFile, Consumer<ByteBuffer> sender) throws IOException
+    {
+	Path filePath = Paths.get(localFile);
+	byte[] data;
+
+	if (isDecompressed(localFile))
+	{
+	    try (InputStream input = Decompression.open(localFile, Files.newInputStream(filePath)))
+	    {
+		data = IOUtils.toByteArray(input);
 	    }
-	} catch (IOException e)
+	} else
+	    data = Files.readAllBytes(filePath);
+
+	// Skip the first lines without copying the rest of the file
+	ByteBuffer bb = ByteBuffer.wrap(data);
+	bb.position(LineScanner.skipLines(bb, 0, data.length, numberOfLinesToSkip));
+
+	sender.accept(bb.slice());
+    }
+
+    // Read the downloaded file by chunks of complete lines and send them into
+    // the geoevent workflow
+    void receiveStream(String localFile, String channelId) throws IOException
+    {
+	receiveStream(localFile, sender(channelId));
+    }
+
+    // Read the downloaded file by chunks of complete lines and give them to
+    // the sender
+    void receiveStream(String localFile, Consumer<ByteBuffer> sender) throws IOException
+    {
+	try (ReadableByteChannel channel = isDecompressed(localFile) ? Channels.newChannel(Decompression.open(localFile, Files.newInputStream(Paths.get(localFile)))) : FileChannel.open(Paths.get(localFile), StandardOpenOption.READ))
 	{
-	    LOGGER.error("FTP Transport Exception error. (server:" + server + ").", e);
-	    stop();
-	    setRunningState(RunningState.ERROR);
+	    getChunkReader().read(channel, numberOfLinesToSkip, sender);
 	}
     }
 
-//Download the file from a SFTP server
-    private void downloadSFTPFiles()
+    // Map the downloaded file into memory and send read-only windows of
+    // complete lines into the geoevent workflow
+    void receiveMapped(String localFile, String channelId) throws IOException
     {
-	SFtpClient sFtpClient = new SFtpClient(server, user, password, serverFolder, fileFormat, localFolder, privateKey, port);
+	receiveMapped(localFile, sender(channelId));
+    }
 
-	try
+    // Map the downloaded file into memory and give read-only windows of
+    // complete lines to the sender
+    void receiveMapped(String localFile, Consumer<ByteBuffer> sender) throws IOException
+    {
+	try (FileChannel channel = FileChannel.open(Paths.get(localFile), StandardOpenOption.READ))
+	{
+	    getMappedReader().read(channel, numberOfLinesToSkip, sender);
+	}
+    }
+
+    // Test if the file is decompressed while it is read
+    private boolean isDecompressed(String fileName)
+    {
+	return decompress && Decompression.isCompressed(fileName);
+    }
+
+    // Send a buffer into the geoevent workflow, tagged with the channel id of
+    // its source. The sources polled at the same time send their buffers one
+    // after the other.
+    private void send(ByteBuffer buffer, String channelId)
+    {
+	synchronized (deliveryLock)
 	{
-	    List<String> files = sFtpClient.downloadFiles();
+	    byteListener.receive(buffer, channelId);
+	}
+    }
+
+    private Consumer<ByteBuffer> sender(String channelId)
+    {
+	return buffer -> send(buffer, channelId);
+    }
+
+    private LineChunkReader getChunkReader()
+    {
+	return chunkReaders.get();
+    }
+
+    private MappedFileReader getMappedReader()
+    {
+	return mappedReaders.get();
+    }
 
-	    // Send the files received
-	    for (String file : files)
+    // A folder polled by the transport, with its client, its index of the
+    // delivered files and its local folder
+    private class Source
+    {
+	private final SourceEndpoint endpoint;
+	private final String password;
+	// Folder where the files of this source are downloaded
+	private final String localFolder;
+	// Channel id of the buffers sent into the geoevent workflow
+	private final String channelId;
+	// Remote path of the server folder, ending with /
+	private final String serverFolder;
+	// The (s)ftp client, its connections are kept open between the cycles
+	private RemoteClient client;
+	// Size and modification time of the delivered files in incremental mode
+	private FileStateIndex stateIndex;
+	// Hashes of the lines of the delivered files in record delta mode
+	private RecordDelta recordDelta;
+	// Digests of the delivered contents in deduplication mode
+	private DigestCache digestCache;
+	// Journal of the files between their download and their post-processing
+	private DownloadJournal journal;
+	// Fingerprint of the server folder at the last listing
+	private String lastFingerprint;
+	// The last fingerprint was already seen at the listing before, so nothing
+	// added right after it was read can have been missed
+	private boolean fingerprintConfirmed;
+	// The sources of the same server could keep more connections open than
+	// allowed, so the idle connections are closed after each poll
+	private boolean sharedHost;
+
+	Source(SourceEndpoint endpoint, String password, String localFolder, String channelId)
+	{
+	    this.endpoint = endpoint;
+	    this.password = password.isEmpty() ? "PASS" : password;
+	    this.localFolder = localFolder;
+	    this.channelId = channelId;
+	    this.serverFolder = endpoint.getServerFolder();
+	}
+
+	String getProtocol()
+	{
+	    return endpoint.getServerType().equals(SourceEndpoint.FTP) ? "FTP" : "SFTP";
+	}
+
+	// Poll the source in multi-source mode, within the connections left to
+	// its server. A source which fails is polled again at the next cycle,
+	// the other sources are not affected. Returns true if new or changed
+	// files were found.
+	boolean poll() throws InterruptedException
+	{
+	    Semaphore permits = getHostPermits(endpoint.getServer());
+	    int connections = getConnections();
+
+	    permits.acquire(connections);
+
+	    try
+	    {
+		return downloadFiles();
+	    } catch (IOException e)
+	    {
+		metrics.error(e);
+		LOGGER.error(getProtocol() + " Transport Exception error. (source:" + endpoint.getId() + ").", e);
+		return false;
+	    } finally
+	    {
+		// The pooled connections count for the server until they are closed
+		if (sharedHost && client != null)
+		    client.closeIdleConnections();
+
+		permits.release(connections);
+	    }
+	}
+
+	// Number of connections opened by a poll. In multi-source mode, it is
+	// capped at the connections a source may take from its server.
+	int getConnections()
+	{
+	    if (sources.isEmpty())
+		return Math.max(1, parallelDownloads);
+
+	    return Math.max(1, Math.min(parallelDownloads, maxConnectionsPerHost));
+	}
+
+	// Download the new files of the source and send them. Returns true if
+	// new or changed files were found.
+	boolean downloadFiles() throws IOException
+	{
+	    // Finish the work interrupted by a restart before the client is created
+	    DownloadJournal journal = isJournaled() ? getJournal() : null;
+
+	    // The folder does not change when a file is appended
+	    String fingerprint = folderFingerprint && !appendMode ? getClient().getFolderFingerprint() : null;
+
+	    // Nothing was added, removed or renamed in the server folder
+	    if (fingerprint != null && fingerprint.equals(lastFingerprint) && fingerprintConfirmed)
+		return false;
+
+	    FileStateIndex index = incremental || appendMode ? getStateIndex() : null;
+	    // Remote paths of all the files listed during this cycle
+	    Set<String> listedFiles = new HashSet<>();
+	    // Remote paths of the new or changed files
+	    Set<String> changedFiles = new HashSet<>();
+	    RemoteFileFilter filter = file -> {
+		listedFiles.add(serverFolder + file.getName());
+
+		// A file delivered before a restart is still post-processed
+		if (index != null && !index.isChanged(serverFolder + file.getName(), file) && (journal == null || !journal.isDelivered(serverFolder + file.getName(), file)))
+		    return false;
+
+		changedFiles.add(serverFolder + file.getName());
+		return true;
+	    };
+
+	    List<RemoteFile> readFiles;
+
+	    if (appendMode)
+		readFiles = getClient().streamFiles(filter, new AppendHandler(this, index));
+	    else if (inFlight)
+		readFiles = getClient().streamFiles(filter, this::receiveInFlight);
+	    else
+		// Send each file as soon as it is downloaded
+		readFiles = getClient().downloadFiles(filter, this::receiveDownloaded);
+
+	    // Forget the files removed from the server
+	    if (index != null)
+		index.retain(listedFiles);
+
+	    if (journal != null)
+		journal.retain(listedFiles);
+
+	    // The files removed by the post action come back with the same name
+	    if (recordDelta != null && postAction.equals(AbstractRemoteClient.NO_ACTION))
+		recordDelta.retain(listedFiles);
+
+	    // Files left for the next cycles by the maximum number of files per
+	    // cycle must be listed again even if the folder does not change
+	    fingerprintConfirmed = fingerprint != null && fingerprint.equals(lastFingerprint) && readFiles.size() >= changedFiles.size();
+	    lastFingerprint = fingerprint;
+
+	    return !changedFiles.isEmpty();
+	}
+
+	// Get the (s)ftp client, created at the first cycle and closed when the transport stops
+	private synchronized RemoteClient getClient()
+	{
+	    if (client != null)
+		return client;
+
+	    AbstractRemoteClient<?> remoteClient;
+
+	    String sourceUser = endpoint.getUser().isEmpty() ? user : endpoint.getUser();
+
+	    if (endpoint.getServerType().equals(SourceEndpoint.FTP))
+	    {
+		FtpClient ftpClient = new FtpClient(endpoint.getServer(), sourceUser, password, serverFolder, endpoint.getFileFormat(), localFolder, endpoint.getPort());
+		ftpClient.setTransferType(transferType);
+		ftpClient.setKeepAlive(ftpKeepAlive);
+		ftpClient.setAutodetectUTF8(ftpAutodetectUTF8);
+		ftpClient.setUseMlsd(ftpUseMlsd);
+		remoteClient = ftpClient;
+	    } else
+	    {
+		SFtpClient sftpClient = new SFtpClient(endpoint.getServer(), sourceUser, password, serverFolder, endpoint.getFileFormat(), localFolder, privateKey, endpoint.getPort());
+		sftpClient.setBulkRequests(sftpBulkRequests);
+		sftpClient.setCiphers(sftpCiphers);
+		sftpClient.setCompression(sftpCompression);
+		remoteClient = sftpClient;
+	    }
+
+	    remoteClient.setMetrics(metrics);
+	    remoteClient.setSocketBufferSize(socketBufferSize * KILOBYTE);
+	    remoteClient.setBufferSize(transferBufferSize * KILOBYTE);
+	    remoteClient.setIdleTimeout(idleTimeout * SECOND_MILLISECONDS);
+	    remoteClient.setMaxLifetime(maxLifetime * SECOND_MILLISECONDS);
+	    remoteClient.setMaxFiles(maxFilesPerCycle);
+	    remoteClient.setChecksums(deduplicate);
+	    remoteClient.setJournal(journal);
+	    // The files read in append mode are still being written
+	    if (!appendMode)
+	    {
+		remoteClient.setPostAction(postAction, renameSuffix, archiveFolder);
+		remoteClient.setMarkerSuffix(markerSuffix);
+		remoteClient.setStableListing(stableListing);
+	    }
+	    remoteClient.setSelector(new RemoteFileSelector(fileRegex.isEmpty() ? null : Pattern.compile(fileRegex), minFileSize, maxFileSize, minFileAge * SECOND_MILLISECONDS, maxFileAge * SECOND_MILLISECONDS, getIgnoredSuffixes()));
+
+	    if (fileOrder.equals(ORDER_BY_NAME))
+		remoteClient.setOrder(RemoteFile.BY_NAME);
+	    else if (fileOrder.equals(ORDER_BY_DATE))
+		remoteClient.setOrder(RemoteFile.BY_MODIFIED_TIME);
+
+	    if (getConnections() > 1 || downloadAhead > 0)
+	    {
+		remoteClient.setParallelism(getConnections(), getDownloadExecutor());
+		remoteClient.setDownloadAhead(downloadAhead);
+	    }
+
+	    client = remoteClient;
+
+	    return client;
+	}
+
+	// Get the index of the delivered files, loaded from the local folder at the first cycle
+	private synchronized FileStateIndex getStateIndex() throws IOException
+	{
+	    if (stateIndex == null)
+	    {
+		String source = endpoint.getServer() + ":" + endpoint.getPort() + "/" + serverFolder + endpoint.getFileFormat();
+		stateIndex = new FileStateIndex(Paths.get(localFolder + STATE_INDEX_PREFIX + Integer.toHexString(source.hashCode())));
+	    }
+
+	    return stateIndex;
+	}
+
+	// The journal only follows the files downloaded into the local folder
+	private boolean isJournaled()
+	{
+	    return downloadJournal && !inFlight && !appendMode;
+	}
+
+	// Get the journal of the downloads, loaded from the local folder and
+	// replayed at the first cycle
+	private synchronized DownloadJournal getJournal() throws IOException
+	{
+	    if (journal == null)
+	    {
+		String source = endpoint.getServer() + ":" + endpoint.getPort() + "/" + serverFolder + endpoint.getFileFormat();
+		journal = new DownloadJournal(Paths.get(localFolder + JOURNAL_PREFIX + Integer.toHexString(source.hashCode())));
+		recover();
+	    }
+
+	    return journal;
+	}
+
+	// Finish the work interrupted by a restart : an incomplete download is
+	// dropped, a staged file is delivered from the local folder without
+	// being downloaded again. The delivered files are post-processed when
+	// they are listed again.
+	private void recover() throws IOException
+	{
+	    for (DownloadJournal.Entry entry : journal.getEntries())
+	    {
+		RemoteFile file = entry.getFile();
+		Path localFile = Paths.get(localFolder + file.getName());
+
+		if (entry.getState() == DownloadJournal.DOWNLOADING)
+		{
+		    Files.deleteIfExists(Paths.get(localFolder + file.getName() + AbstractRemoteClient.STAGING_SUFFIX));
+		    journal.remove(entry.getPath());
+		} else if (entry.getState() == DownloadJournal.STAGED)
+		{
+		    if (!Files.exists(localFile))
+			journal.remove(entry.getPath());
+		    else if (receiveDownloaded(file))
+			LOGGER.info("FTP connector. File delivered after a restart : " + entry.getPath());
+		} else if (deleteFiles)
+		    Files.deleteIfExists(localFile);
+	    }
+	}
+
+	// Get the digests of the delivered contents, loaded from the local folder at the first cycle
+	private synchronized DigestCache getDigestCache() throws IOException
+	{
+	    if (digestCache == null)
+	    {
+		String source = endpoint.getServer() + ":" + endpoint.getPort() + "/" + serverFolder + endpoint.getFileFormat();
+		digestCache = new DigestCache(Paths.get(localFolder + DIGEST_CACHE_PREFIX + Integer.toHexString(source.hashCode())), deduplicationCacheSize, deduplicationTimeToLive * SECOND_MILLISECONDS);
+	    }
+
+	    return digestCache;
+	}
+
+	// Test if the content of the downloaded file was recently delivered. A
+	// duplicate is remembered as seen again.
+	private boolean isDuplicate(RemoteFile file) throws IOException
+	{
+	    if (!deduplicate || file.getChecksum() == RemoteFile.NO_CHECKSUM)
+		return false;
+
+	    boolean duplicate = getDigestCache().contains(file.getChecksum());
+
+	    if (duplicate)
+		getDigestCache().add(file.getChecksum());
+
+	    return duplicate;
+	}
+
+	// Remember the content of the delivered file
+	private void deliveredContent(RemoteFile file) throws IOException
+	{
+	    if (deduplicate && file.getChecksum() != RemoteFile.NO_CHECKSUM)
+		getDigestCache().add(file.getChecksum());
+	}
+
+	// Get the hashes of the lines of the delivered files, empty at the first cycle
+	private synchronized RecordDelta getRecordDelta()
+	{
+	    if (recordDelta == null)
+		recordDelta = new RecordDelta();
+
+	    return recordDelta;
+	}
+
+	// Start the delivery of a file, null if all its lines are sent
+	private RecordDelta.Extraction openDelta(RemoteFile file)
+	{
+	    return recordDeltaMode ? getRecordDelta().open(serverFolder + file.getName()) : null;
+	}
+
+	// Send all the lines, or only the new and changed lines in record delta mode
+	private Consumer<ByteBuffer> sender(RecordDelta.Extraction delta)
+	{
+	    Consumer<ByteBuffer> sender = FTPInboundTransport.this.sender(channelId);
+
+	    return delta == null ? sender : chunk -> delta.filter(chunk, sender);
+	}
+
+	// Remember a file as delivered so that it is not downloaded again while it does not change
+	private void delivered(RemoteFile file) throws IOException
+	{
+	    if (incremental)
+		getStateIndex().update(serverFolder + file.getName(), file);
+
+	    if (journal != null)
+		journal.update(serverFolder + file.getName(), file, DownloadJournal.DELIVERED);
+	}
+
+	// Send a file downloaded into the local folder. Returns true once it is
+	// received, a failed delivery throws an IOException.
+	private boolean receiveDownloaded(RemoteFile file) throws IOException
+	{
+	    String localFileName = localFolder + file.getName();
+
+	    // Dropped before it is read, as if it was delivered
+	    if (isDuplicate(file))
 	    {
-		String localFileName = localFolder + file;
-		receive(localFileName);
+		metrics.duplicated();
+		delivered(file);
 
 		if (deleteFiles)
 		    Files.delete(Paths.get(localFileName));
+
+		return true;
 	    }
-	} catch (Exception e)
+
+	    long start = System.nanoTime();
+	    RecordDelta.Extraction delta = openDelta(file);
+	    Consumer<ByteBuffer> sender = sender(delta);
+
+	    // A failed delivery aborts the cycle of the source only. The file
+	    // is kept for the journal, which delivers it again after a restart.
+	    try
+	    {
+		if (deliveryMode.equals(STREAM_DELIVERY))
+		    receiveStream(localFileName, sender);
+		else if (deliveryMode.equals(MAPPED_DELIVERY) && isDecompressed(localFileName))
+		    // A compressed file can not be mapped
+		    receiveStream(localFileName, sender);
+		else if (deliveryMode.equals(MAPPED_DELIVERY) && Files.size(Paths.get(localFileName)) >= (long) mappedThreshold * KILOBYTE)
+		    receiveMapped(localFileName, sender);
+		else
+		    receive(localFileName, sender);
+	    } catch (RuntimeException e)
+	    {
+		throw new IOException("Delivery failed : " + serverFolder + file.getName(), e);
+	    }
+
+	    metrics.delivered(System.nanoTime() - start);
+
+	    if (delta != null)
+		delta.commit();
+
+	    delivered(file);
+	    deliveredContent(file);
+
+	    // Deleted once it is known as delivered
+	    if (deleteFiles)
+		Files.delete(Paths.get(localFileName));
+
+	    return true;
+	}
+
+	// Read a remote file while it is downloaded and send it by chunks of
+	// complete lines into the geoevent workflow
+	private void receiveInFlight(RemoteFile file, InputStream input) throws IOException
 	{
-	    LOGGER.error("SFTP Transport Exception error. (server:" + server + ").", e);
-	    stop();
-	    setRunningState(RunningState.ERROR);
+	    OutputStream localCopy = null;
+	    InputStream source = input;
+
+	    try
+	    {
+		if (keepLocalCopy)
+		{
+		    localCopy = new BufferedOutputStream(new FileOutputStream(localFolder + file.getName()));
+		    source = new TeeInputStream(input, localCopy);
+		}
+
+		// The local copy keeps the compressed bytes
+		if (isDecompressed(file.getName()))
+		    source = Decompression.open(file.getName(), source);
+
+		long start = System.nanoTime();
+		RecordDelta.Extraction delta = openDelta(file);
+
+		getChunkReader().read(Channels.newChannel(source), numberOfLinesToSkip, sender(delta));
+		metrics.delivered(System.nanoTime() - start);
+
+		if (delta != null)
+		    delta.commit();
+		delivered(file);
+	    } finally
+	    {
+		if (localCopy != null)
+		    localCopy.close();
+	    }
+	}
+
+	// Close the client, the index of the delivered files, the digests of their contents and the journal
+	void close() throws IOException
+	{
+	    if (client != null)
+	    {
+		client.close();
+		client = null;
+	    }
+
+	    if (stateIndex != null)
+	    {
+		stateIndex.close();
+		stateIndex = null;
+	    }
+
+	    if (digestCache != null)
+	    {
+		digestCache.close();
+		digestCache = null;
+	    }
+
+	    if (journal != null)
+	    {
+		journal.close();
+		journal = null;
+	    }
 	}
     }
 
-    // Convert the downloaded file as bytes and send them into the geoevent
-    // workflow
-    private void receive(String localFile)
+    // Download only the lines appended to the remote files since their last
+    // delivery and send them into the geoevent workflow
+    private class AppendHandler implements FileStreamHandler
     {
-	ByteBuffer bb = null;
+	private final Source source;
+	private final FileStateIndex index;
+	// The last bytes sent, read again next time to check the file was not replaced
+	private final byte[] tail = new byte[TAIL_LENGTH];
+	private int tailLength;
 
-	try
+	AppendHandler(Source source, FileStateIndex index)
+	{
+	    this.source = source;
+	    this.index = index;
+	}
+
+	@Override
+	public boolean isResumable()
 	{
-	    Path filePath = Paths.get(localFile);
-	    byte[] data = Files.readAllBytes(filePath);
+	    return true;
+	}
+
+	@Override
+	public long getOffset(RemoteFile file)
+	{
+	    FileState state = index.get(source.serverFolder + file.getName());
+
+	    if (!isResumed(file, state))
+		return 0;
+
+	    return state.getOffset() - state.getTailLength();
+	}
 
-	    int returnCharfound = 0;
-	    int lastReturnPosition = 0;
+	@Override
+	public void handle(RemoteFile file, InputStream input) throws IOException
+	{
+	    String path = source.serverFolder + file.getName();
+	    FileState state = index.get(path);
+	    boolean resumed = isResumed(file, state);
 
-	    // If we must skip lines in the downloaded file
-	    if (numberOfLinesToSkip > 0)
+	    if (resumed && !hasSameTail(input, state))
 	    {
-		// Scan each byte
-		for (int i = 0; i < data.length; i++)
-		{
-		    // If it's a return character
-		    if (data[i] == RETURN_CHAR)
-		    {
-			returnCharfound++;
-			// If the number of return characters is equal to the number of lines to skip,
-			// save the current position
-			if (returnCharfound == numberOfLinesToSkip)
-			{
-			    lastReturnPosition = i;
-			    break;
-			}
-
-		    }
-		}
+		LOGGER.info("FTP connector. File replaced, it will be read again from the beginning : " + path);
+		index.remove(path);
+		return;
 	    }
 
-	    // skip first lines
-	    if (returnCharfound > 0)
-		data = Arrays.copyOfRange(data, lastReturnPosition + 1, data.length);
+	    long offset = resumed ? state.getOffset() : 0;
+	    tailLength = 0;
+
+	    // The header lines are only at the beginning of the file, an incomplete last line is sent next time
+	    long bytesRead = getChunkReader().read(Channels.newChannel(input), resumed ? 0 : numberOfLinesToSkip, true, chunk -> {
+		keepTail(chunk);
+		send(chunk, source.channelId);
+	    });
 
-	    bb = ByteBuffer.allocate(data.length);
+	    if (tailLength > 0)
+	    {
+		CRC32 checksum = new CRC32();
+		checksum.update(tail, 0, tailLength);
+		index.update(path, new FileState(file.getSize(), file.getModifiedTime(), offset + bytesRead, tailLength, checksum.getValue()));
+	    } else if (resumed)
+		index.update(path, new FileState(file.getSize(), file.getModifiedTime(), offset + bytesRead, state.getTailLength(), state.getTailChecksum()));
+	    else
+		index.update(path, new FileState(file.getSize(), file.getModifiedTime(), bytesRead, 0, 0));
+	}
 
-	    bb.put(data);
-	    bb.flip();
-	    byteListener.receive(bb, "");
-	    bb.clear();
-	} catch (BufferOverflowException boe)
+	// A file smaller than what was already read has been truncated and is read from the beginning
+	private boolean isResumed(RemoteFile file, FileState state)
 	{
-	    LOGGER.error("BUFFER_OVERFLOW_ERROR", boe);
-	    setRunningState(RunningState.ERROR);
-	} catch (Exception e)
+	    return state != null && file.getSize() >= state.getOffset();
+	}
+
+	// Read the bytes before the offset and compare them with the ones sent last time
+	private boolean hasSameTail(InputStream input, FileState state) throws IOException
 	{
-	    LOGGER.error("UNEXPECTED_ERROR", e);
-	    stop();
-	    setRunningState(RunningState.ERROR);
+	    byte[] bytes = new byte[state.getTailLength()];
+	    int length = 0;
+
+	    while (length < bytes.length)
+	    {
+		int count = input.read(bytes, length, bytes.length - length);
+
+		if (count < 0)
+		    return false;
+
+		length += count;
+	    }
+
+	    CRC32 checksum = new CRC32();
+	    checksum.update(bytes, 0, length);
+
+	    return checksum.getValue() == state.getTailChecksum();
 	}
 
+	// Copy the last bytes of the chunk before it is consumed by the adapter
+	private void keepTail(ByteBuffer chunk)
+	{
+	    tailLength = Math.min(TAIL_LENGTH, chunk.remaining());
+	    int from = chunk.limit() - tailLength;
+
+	    for (int i = 0; i < tailLength; i++)
+		tail[i] = chunk.get(from + i);
+	}
     }
 
 }
@@ -0,0 +1,76 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+/**
+ * The FileState class holds what is known about a remote file at its last
+ * delivery : its metadata and, in append mode, how far it has been read
+ */
+public class FileState
+{
+    // Size in bytes
+    private final long size;
+    // Last modification time in milliseconds
+    private final long modifiedTime;
+    // Number of bytes already read, up to the end of the last complete line
+    private final long offset;
+    // Number of bytes, just before the offset, used to check the file was not replaced
+    private final int tailLength;
+    // Checksum of these bytes
+    private final long tailChecksum;
+
+    public FileState(long size, long modifiedTime)
+    {
+	this(size, modifiedTime, 0, 0, 0);
+    }
+
+    public FileState(long size, long modifiedTime, long offset, int tailLength, long tailChecksum)
+    {
+	this.size = size;
+	this.modifiedTime = modifiedTime;
+	this.offset = offset;
+	this.tailLength = tailLength;
+	this.tailChecksum = tailChecksum;
+    }
+
+    public long getSize()
+    {
+	return size;
+    }
+
+    public long getModifiedTime()
+    {
+	return modifiedTime;
+    }
+
+    public long getOffset()
+    {
+	return offset;
+    }
+
+    public int getTailLength()
+    {
+	return tailLength;
+    }
+
+    public long getTailChecksum()
+    {
+	return tailChecksum;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The FileStateIndex class remembers the size and the modification time of
+ * the remote files already delivered, so that unchanged files are not
+ * downloaded again, and how far the files read in append mode have been
+ * read. The index is kept in an append-only log which is replayed at startup
+ * and rewritten when it holds too many old records.
+ */
+public class FileStateIndex implements Closeable
+{
+    // Size written in the log when a file is removed from the index
+    static final long REMOVED = -1L;
+
+    // State of each file, by remote path
+    private final Map<String, FileState> entries = new HashMap<>();
+    // The log of the changes of the index
+    private final RecordLog log;
+
+    public FileStateIndex(Path file) throws IOException
+    {
+	log = new RecordLog(file, this::read, this::write);
+    }
+
+    // Test if the file is new or has changed since it was last delivered
+    public synchronized boolean isChanged(String path, RemoteFile remoteFile)
+    {
+	FileState state = entries.get(path);
+
+	return state == null || state.getSize() != remoteFile.getSize() || state.getModifiedTime() != remoteFile.getModifiedTime();
+    }
+
+    // Get the state of the file at its last delivery, null if unknown
+    public synchronized FileState get(String path)
+    {
+	return entries.get(path);
+    }
+
+    // Remember the file as delivered
+    public void update(String path, RemoteFile remoteFile) throws IOException
+    {
+	update(path, new FileState(remoteFile.getSize(), remoteFile.getModifiedTime()));
+    }
+
+    // Remember the state of the file after its delivery
+    public synchronized void update(String path, FileState state) throws IOException
+    {
+	entries.put(path, state);
+	append(path, state);
+    }
+
+    // Forget the file, it will be delivered again from its beginning
+    public synchronized void remove(String path) throws IOException
+    {
+	if (entries.remove(path) != null)
+	    append(path, new FileState(REMOVED, 0));
+    }
+
+    // Forget the files which are no longer on the server
+    public synchronized void retain(Set<String> paths) throws IOException
+    {
+	Iterator<String> iterator = entries.keySet().iterator();
+
+	while (iterator.hasNext())
+	{
+	    String path = iterator.next();
+
+	    if (!paths.contains(path))
+	    {
+		iterator.remove();
+		append(path, new FileState(REMOVED, 0));
+	    }
+	}
+    }
+
+    public synchronized int size()
+    {
+	return entries.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+	log.close();
+    }
+
+    private void append(String path, FileState state) throws IOException
+    {
+	log.append(output -> write(output, path, state), entries.size());
+    }
+
+    // Replay a record of the log
+    private void read(DataInputStream input) throws IOException
+    {
+	String path = input.readUTF();
+	FileState state = new FileState(input.readLong(), input.readLong(), input.readLong(), input.readInt(), input.readLong());
+
+	if (state.getSize() == REMOVED)
+	    entries.remove(path);
+	else
+	    entries.put(path, state);
+    }
+
+    // Write the current entries into the rewritten log
+    private int write(DataOutputStream output) throws IOException
+    {
+	for (Map.Entry<String, FileState> entry : entries.entrySet())
+	    write(output, entry.getKey(), entry.getValue());
+
+	return entries.size();
+    }
+
+    private static void write(DataOutputStream output, String path, FileState state) throws IOException
+    {
+	output.writeUTF(path);
+	output.writeLong(state.getSize());
+	output.writeLong(state.getModifiedTime());
+	output.writeLong(state.getOffset());
+	output.writeInt(state.getTailLength());
+	output.writeLong(state.getTailChecksum());
+    }
+}
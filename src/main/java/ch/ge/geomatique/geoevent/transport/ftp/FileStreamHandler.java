@@ -0,0 +1,46 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The FileStreamHandler interface receives the content of a remote file while
+ * it is downloaded
+ */
+public interface FileStreamHandler
+{
+    // Position in the remote file where the download starts
+    default long getOffset(RemoteFile file)
+    {
+	return 0;
+    }
+
+    // Test if the files may be resumed at an offset, so that they must be
+    // transferred without converting their line endings
+    default boolean isResumable()
+    {
+	return false;
+    }
+
+    // Read the remote file from the offset. The input is closed by the client
+    // afterwards.
+    void handle(RemoteFile file, InputStream input) throws IOException;
+}
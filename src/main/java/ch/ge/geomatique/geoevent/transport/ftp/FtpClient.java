@@ -18,16 +18,15 @@
  */
 package ch.ge.geomatique.geoevent.transport.ftp;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.net.ftp.FTP;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPFile;
@@ -40,42 +39,82 @@ import org.apache.commons.net.ftp.FTPReply;
  * @version 1.1
  * @since 25.03.2021
  */
-public class FtpClient
+public class FtpClient extends AbstractRemoteClient<FTPClient>
 {
-    // Server name
-    private String server = "";
+    // Transfer types : ascii (the server converts the line endings), binary
+    // (the bytes are not changed) or auto (binary for the compressed files)
+    static final String ASCII_TRANSFER = "ascii";
+    static final String BINARY_TRANSFER = "binary";
+    static final String AUTO_TRANSFER = "auto";
+
     // User name
     private String user = "";
     // User password
     private String password = "";
-    // Folder on the server where the file is stored
-    private String serverFolder = "";
-    // The file format of the files
-    private String fileFormat = "";
-    // Folder where the file will be downloaded
-    private String localFolder = "";
     // FTP port
     private int port;
+    // Transfer type of the files
+    private String transferType = ASCII_TRANSFER;
+    // Seconds between two NOOP sent on the control connection during a
+    // download, so that a firewall does not close it (0 = disabled)
+    private long keepAlive = 0;
+    // Switch to UTF-8 file names when the server supports it
+    private boolean autodetectUTF8;
+    // List the folder with MLSD when the server supports it
+    private boolean useMlsd = true;
 
     public FtpClient(String server, String user, String password, String serverFolder, String fileFormat, String localFolder, int port)
     {
-	this.server = server;
+	super(server, serverFolder, fileFormat, localFolder);
 	this.user = user;
 	this.password = password;
-	this.serverFolder = serverFolder;
-	this.fileFormat = fileFormat;
-	this.localFolder = localFolder;
 	this.port = port;
     }
 
-    public List<String> downloadFiles() throws IOException
+    public void setTransferType(String transferType)
+    {
+	this.transferType = transferType;
+    }
+
+    public void setKeepAlive(long keepAlive)
+    {
+	this.keepAlive = Math.max(0, keepAlive);
+    }
+
+    public void setAutodetectUTF8(boolean autodetectUTF8)
+    {
+	this.autodetectUTF8 = autodetectUTF8;
+    }
+
+    public void setUseMlsd(boolean useMlsd)
+    {
+	this.useMlsd = useMlsd;
+    }
+
+    @Override
+    protected String getProtocol()
+    {
+	return "FTP";
+    }
+
+    @Override
+    protected FTPClient connect() throws IOException
     {
 	// The reply from the ftp server
 	int reply;
-	// List of all file names downloaded
-	List<String> fileNames = new ArrayList<>();
 	FTPClient ftp = new FTPClient();
 
+	// Must be set before the connection, it is applied after the login
+	ftp.setAutodetectUTF8(autodetectUTF8);
+	// Size of the buffers of the data connections
+	ftp.setBufferSize(bufferSize);
+	if (socketBufferSize > 0)
+	{
+	    ftp.setReceiveBufferSize(socketBufferSize);
+	    ftp.setSendBufferSize(socketBufferSize);
+	}
+	ftp.setControlKeepAliveTimeout(keepAlive);
+
 	try
 	{
 	    // Connect to the server
@@ -87,51 +126,197 @@ public class FtpClient
 
 	    // Test if we are connected to the server
 	    if (!FTPReply.isPositiveCompletion(reply))
-	    {
-		ftp.disconnect();
 		throw new IOException("FTP server refused connection. (server:" + server + ").");
-	    }
 
-	    ftp.setFileType(FTP.ASCII_FILE_TYPE);
+	    ftp.setFileType(transferType.equals(BINARY_TRANSFER) ? FTP.BINARY_FILE_TYPE : FTP.ASCII_FILE_TYPE);
 
-	    String remoteFiles = serverFolder + fileFormat;
+	    return ftp;
 
-	    // Test if the file exists on the ftp server
-	    FTPFile[] files = ftp.listFiles(remoteFiles);
+	} catch (IOException e)
+	{
+	    disconnect(ftp);
+	    throw new IOException("FTP Transport Exception error. (server:" + server + ").", e);
+	}
+    }
 
-	    if (files.length == 0)
-		throw new IOException("FTP Exception. File does not exist. (server:" + server + ",fileName:" + fileFormat + ").");
+    @Override
+    protected boolean isAlive(FTPClient ftp)
+    {
+	try
+	{
+	    return ftp.isConnected() && ftp.sendNoOp();
+	} catch (IOException e)
+	{
+	    return false;
+	}
+    }
 
-	    // Download each file
-	    for (FTPFile file : files)
-	    {
-		Path path = Paths.get(file.getName());
-		// Get only the file name without the path
-		String filename = path.getFileName().toString();
-		File downloadFile = new File(localFolder + filename);
+    @Override
+    protected void disconnect(FTPClient ftp)
+    {
+	if (!ftp.isConnected())
+	    return;
 
-		try (FileOutputStream fr = new FileOutputStream(downloadFile); OutputStream outputStream = new BufferedOutputStream(fr);)
-		{
-		    boolean success = ftp.retrieveFile(serverFolder + filename, outputStream);
+	try
+	{
+	    ftp.logout();
+	} catch (IOException e)
+	{
+	    // The server may already have closed the connection
+	}
 
-		    if (success)
-			fileNames.add(filename);
-		}
-	    }
+	try
+	{
+	    ftp.disconnect();
+	} catch (IOException e)
+	{
+	    // Nothing more to close
+	}
+    }
 
-	    ftp.logout();
+    @Override
+    protected String fingerprint(FTPClient ftp) throws IOException
+    {
+	// MLST gives the facts of the folder itself
+	FTPFile folder = ftp.mlistFile(getFolderPath());
 
-	    return fileNames;
+	if (folder != null && folder.getTimestamp() != null)
+	    return folder.getTimestamp().getTimeInMillis() + ":" + folder.getSize();
 
-	} catch (IOException e)
+	// Some servers also answer MDTM for a folder, null otherwise
+	return ftp.getModificationTime(getFolderPath());
+    }
+
+    @Override
+    protected List<RemoteFile> list(FTPClient ftp) throws IOException
+    {
+	List<RemoteFile> remoteFiles = new ArrayList<>();
+
+	// Test if the file exists on the ftp server
+	FTPFile[] files = listEntries(ftp, fileFormat);
+
+	// The folder is expected to be empty once the received files are removed
+	if (files.length == 0 && !isPostProcessed())
+	    throw new IOException("FTP Exception. File does not exist. (server:" + server + ",fileName:" + fileFormat + ").");
+
+	for (FTPFile file : files)
 	{
-	    throw new IOException("FTP Transport Exception error. (server:" + server + ").", e);
+	    Path path = Paths.get(file.getName());
+	    // Get only the file name without the path
+	    String filename = path.getFileName().toString();
+	    long modifiedTime = file.getTimestamp() != null ? file.getTimestamp().getTimeInMillis() : 0;
+
+	    if (selector.accept(filename, file.getSize(), modifiedTime))
+		remoteFiles.add(new RemoteFile(filename, file.getSize(), modifiedTime));
+	}
+
+	return remoteFiles;
+    }
+
+    @Override
+    protected List<String> listNames(FTPClient ftp, String pattern) throws IOException
+    {
+	List<String> names = new ArrayList<>();
+
+	for (FTPFile file : listEntries(ftp, pattern))
+	    names.add(Paths.get(file.getName()).getFileName().toString());
+
+	return names;
+    }
+
+    @Override
+    protected boolean download(FTPClient ftp, RemoteFile file) throws IOException
+    {
+	setFileType(ftp, file);
+
+	try (OutputStream outputStream = openLocalFile(file))
+	{
+	    return ftp.retrieveFile(serverFolder + file.getName(), outputStream);
+	}
+    }
+
+    @Override
+    protected boolean stream(FTPClient ftp, RemoteFile file, FileStreamHandler handler) throws IOException
+    {
+	long offset = handler.getOffset(file);
+
+	// In ascii, the server converts the line endings, so the offsets in
+	// the transferred bytes would not match the offsets in the remote file
+	if (handler.isResumable() || offset > 0)
+	    ftp.setFileType(FTP.BINARY_FILE_TYPE);
+	else
+	    ftp.setFileType(getFileType(file));
+
+	// Resume the transfer from the offset with the REST command
+	ftp.setRestartOffset(offset);
+	InputStream inputStream = ftp.retrieveFileStream(serverFolder + file.getName());
+
+	// The server refused to send the file
+	if (inputStream == null)
+	    return false;
+
+	try
+	{
+	    handler.handle(file, inputStream);
 	} finally
 	{
-	    if (ftp.isConnected())
-	    {
-		ftp.disconnect();
-	    }
+	    inputStream.close();
 	}
+
+	// Wait for the end of the transfer on the control connection
+	return ftp.completePendingCommand();
+    }
+
+    @Override
+    protected void delete(FTPClient ftp, String path) throws IOException
+    {
+	if (!ftp.deleteFile(path))
+	    throw new IOException("FTP Exception. File not deleted. (server:" + server + ",fileName:" + path + ",reply:" + ftp.getReplyString().trim() + ").");
+    }
+
+    @Override
+    protected void rename(FTPClient ftp, String from, String to) throws IOException
+    {
+	if (!ftp.rename(from, to))
+	    throw new IOException("FTP Exception. File not renamed. (server:" + server + ",fileName:" + from + ",newName:" + to + ",reply:" + ftp.getReplyString().trim() + ").");
+    }
+
+    // List the files matching the pattern, with MLSD when the server supports it
+    private FTPFile[] listEntries(FTPClient ftp, String pattern) throws IOException
+    {
+	return useMlsd && ftp.hasFeature("MLST") ? mlistFiles(ftp, pattern) : ftp.listFiles(serverFolder + pattern);
+    }
+
+    // MLSD gives the exact size and the modification time in UTC of every
+    // entry in a standard format, but it does not accept a file pattern : the
+    // files are filtered here
+    private FTPFile[] mlistFiles(FTPClient ftp, String pattern) throws IOException
+    {
+	FTPFile[] entries = serverFolder.isEmpty() ? ftp.mlistDir() : ftp.mlistDir(serverFolder);
+	List<FTPFile> files = new ArrayList<>();
+
+	for (FTPFile entry : entries)
+	{
+	    if (entry != null && entry.isFile() && FilenameUtils.wildcardMatch(entry.getName(), pattern))
+		files.add(entry);
+	}
+
+	return files.toArray(new FTPFile[files.size()]);
+    }
+
+    // In auto mode, transfer the compressed files in binary and the others in ascii
+    private void setFileType(FTPClient ftp, RemoteFile file) throws IOException
+    {
+	if (transferType.equals(AUTO_TRANSFER))
+	    ftp.setFileType(getFileType(file));
+    }
+
+    // Ftp file type of the file for the transfer type
+    private int getFileType(RemoteFile file)
+    {
+	if (transferType.equals(AUTO_TRANSFER))
+	    return Decompression.isCompressed(file.getName()) ? FTP.BINARY_FILE_TYPE : FTP.ASCII_FILE_TYPE;
+
+	return transferType.equals(BINARY_TRANSFER) ? FTP.BINARY_FILE_TYPE : FTP.ASCII_FILE_TYPE;
     }
-}
\ No newline at end of file
+}
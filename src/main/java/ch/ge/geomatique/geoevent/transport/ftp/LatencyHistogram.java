@@ -0,0 +1,101 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The LatencyHistogram class counts durations into buckets of powers of two
+ * microseconds. Recording a duration does not allocate any object and can be
+ * done from several threads, so it can be used on the hot path.
+ */
+public class LatencyHistogram
+{
+    // Bucket i holds the durations between 2^(i-1) and 2^i microseconds, the last one everything longer
+    static final int BUCKETS = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    // Sum and maximum in microseconds
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    // Add a duration in nanoseconds
+    public void record(long nanos)
+    {
+	long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+	int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+
+	counts.incrementAndGet(bucket);
+	count.incrementAndGet();
+	sum.addAndGet(micros);
+
+	long current = max.get();
+	while (micros > current && !max.compareAndSet(current, micros))
+	    current = max.get();
+    }
+
+    public long getCount()
+    {
+	return count.get();
+    }
+
+    // Snapshot of the recorded durations, the percentiles are the upper bounds of their buckets
+    public LatencyStatistics getStatistics()
+    {
+	long[] snapshot = new long[BUCKETS];
+	long total = 0;
+
+	for (int i = 0; i < BUCKETS; i++)
+	{
+	    snapshot[i] = counts.get(i);
+	    total += snapshot[i];
+	}
+
+	double mean = total > 0 ? sum.get() / (double) total : 0;
+
+	return new LatencyStatistics(total, toMillis(mean), percentile(snapshot, total, 0.5), percentile(snapshot, total, 0.9), percentile(snapshot, total, 0.99), toMillis(max.get()));
+    }
+
+    private static double percentile(long[] snapshot, long total, double rank)
+    {
+	if (total == 0)
+	    return 0;
+
+	long wanted = (long) Math.ceil(total * rank);
+	long seen = 0;
+
+	for (int i = 0; i < BUCKETS; i++)
+	{
+	    seen += snapshot[i];
+
+	    if (seen >= wanted)
+		return toMillis(i == 0 ? 0 : 1L << i);
+	}
+
+	return toMillis(1L << BUCKETS);
+    }
+
+    private static double toMillis(double micros)
+    {
+	return micros / 1000;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * The LatencyStatistics class is a snapshot of a latency histogram. Times are
+ * in milliseconds.
+ */
+public class LatencyStatistics
+{
+    private final long count;
+    private final double mean;
+    private final double p50;
+    private final double p90;
+    private final double p99;
+    private final double max;
+
+    @ConstructorProperties({ "count", "mean", "p50", "p90", "p99", "max" })
+    public LatencyStatistics(long count, double mean, double p50, double p90, double p99, double max)
+    {
+	this.count = count;
+	this.mean = mean;
+	this.p50 = p50;
+	this.p90 = p90;
+	this.p99 = p99;
+	this.max = max;
+    }
+
+    public long getCount()
+    {
+	return count;
+    }
+
+    public double getMean()
+    {
+	return mean;
+    }
+
+    public double getP50()
+    {
+	return p50;
+    }
+
+    public double getP90()
+    {
+	return p90;
+    }
+
+    public double getP99()
+    {
+	return p99;
+    }
+
+    public double getMax()
+    {
+	return max;
+    }
+
+    @Override
+    public String toString()
+    {
+	return "count:" + count + ", mean:" + mean + ", p50:" + p50 + ", p90:" + p90 + ", p99:" + p99 + ", max:" + max;
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+/**
+ * The LineChunkReader class reads a channel into one reusable buffer and
+ * sends its content by chunks which always end on a line boundary (\n, \r\n
+ * or \r), so that the memory used does not depend on the size of the file.
+ */
+public class LineChunkReader
+{
+    // Allocate the buffer outside of the java heap
+    private final boolean direct;
+    // The buffer reused for every chunk, it only grows for lines longer than its capacity
+    private ByteBuffer buffer;
+
+    public LineChunkReader(int chunkSize, boolean direct)
+    {
+	this.direct = direct;
+	this.buffer = allocate(chunkSize);
+    }
+
+    // Read the whole channel, skip the first lines and send the chunks to the
+    // consumer. Returns the number of bytes read.
+    public long read(ReadableByteChannel channel, int numberOfLinesToSkip, Consumer<ByteBuffer> consumer) throws IOException
+    {
+	return read(channel, numberOfLinesToSkip, false, consumer);
+    }
+
+    // Read the whole channel, skip the first lines and send the chunks to the
+    // consumer. If completeLinesOnly is set, an incomplete line at the end of
+    // the channel is not sent. Returns the number of bytes read up to the end
+    // of the last line sent or skipped.
+    public long read(ReadableByteChannel channel, int numberOfLinesToSkip, boolean completeLinesOnly, Consumer<ByteBuffer> consumer) throws IOException
+    {
+	int linesToSkip = numberOfLinesToSkip;
+	// Bytes read up to the end of the last line sent or skipped
+	long bytesRead = 0;
+	// Bytes of the line being skipped which were already dropped from the buffer
+	long bytesSkipped = 0;
+	boolean endOfFile = false;
+
+	buffer.clear();
+
+	while (!endOfFile)
+	{
+	    // Fill the buffer after the incomplete line kept from the previous chunk
+	    while (buffer.hasRemaining())
+	    {
+		if (channel.read(buffer) < 0)
+		{
+		    endOfFile = true;
+		    break;
+		}
+	    }
+
+	    buffer.flip();
+
+	    // Skip the first lines
+	    while (linesToSkip > 0 && buffer.hasRemaining())
+	    {
+		int end = LineScanner.lineEnd(buffer, buffer.position(), buffer.limit(), endOfFile);
+
+		if (end < 0)
+		{
+		    // Keep a \r which may be followed by a \n not read yet
+		    int kept = buffer.get(buffer.limit() - 1) == LineScanner.CARRIAGE_RETURN ? 1 : 0;
+
+		    bytesSkipped += buffer.remaining() - kept;
+		    buffer.position(buffer.limit() - kept);
+		    break;
+		}
+
+		bytesRead += bytesSkipped + end - buffer.position();
+		bytesSkipped = 0;
+		buffer.position(end);
+		linesToSkip--;
+	    }
+
+	    // Send the complete lines, or everything left at the end of the file
+	    int end = endOfFile && !completeLinesOnly ? buffer.limit() : LineScanner.lastLineEnd(buffer, buffer.position(), buffer.limit(), endOfFile);
+
+	    if (end > buffer.position())
+	    {
+		int limit = buffer.limit();
+		bytesRead += end - buffer.position();
+
+		buffer.limit(end);
+		consumer.accept(buffer);
+		buffer.limit(limit);
+		buffer.position(end);
+	    } else if (!endOfFile && buffer.position() == 0 && buffer.limit() == buffer.capacity())
+	    {
+		// A single line does not fit into the buffer
+		grow();
+		continue;
+	    }
+
+	    buffer.compact();
+	}
+
+	// Without a return character, the last line skipped is complete at the end of the file
+	if (!completeLinesOnly)
+	    bytesRead += bytesSkipped;
+
+	return bytesRead;
+    }
+
+    // Double the capacity of the buffer, keeping its content
+    private void grow()
+    {
+	ByteBuffer bigger = allocate(buffer.capacity() * 2);
+
+	bigger.put(buffer);
+	buffer = bigger;
+    }
+
+    private ByteBuffer allocate(int capacity)
+    {
+	return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
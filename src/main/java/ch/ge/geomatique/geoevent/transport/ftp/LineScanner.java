@@ -0,0 +1,151 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The LineScanner class finds the line breaks (\n, \r\n or \r) in a buffer.
+ * It reads the buffer 8 bytes at a time and tests the 8 bytes of each long
+ * together (SWAR), so it scans several times faster than a byte loop. The
+ * positions returned let the caller slice the buffer without copying it.
+ */
+public final class LineScanner
+{
+    static final byte LINE_FEED = 10;
+    static final byte CARRIAGE_RETURN = 13;
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long LINE_FEEDS = ONES * LINE_FEED;
+    private static final long CARRIAGE_RETURNS = ONES * CARRIAGE_RETURN;
+
+    private LineScanner()
+    {
+    }
+
+    // Position after the given number of lines from the position from, or to
+    // if there are fewer lines
+    public static int skipLines(ByteBuffer buffer, int from, int to, int numberOfLines)
+    {
+	int position = from;
+
+	for (int i = 0; i < numberOfLines && position < to; i++)
+	{
+	    int end = lineEnd(buffer, position, to, true);
+	    position = end < 0 ? to : end;
+	}
+
+	return position;
+    }
+
+    // Position after the first line break between from and to, -1 if none. A
+    // \r at the end may be followed by a \n not read yet, so it only ends a
+    // line at the end of the input.
+    public static int lineEnd(ByteBuffer buffer, int from, int to, boolean endOfInput)
+    {
+	int i = indexOfLineBreak(buffer, from, to);
+
+	if (i < 0 || buffer.get(i) == LINE_FEED)
+	    return i < 0 ? -1 : i + 1;
+
+	// A carriage return, alone or followed by a line feed
+	if (i + 1 < to)
+	    return buffer.get(i + 1) == LINE_FEED ? i + 2 : i + 1;
+
+	return endOfInput ? to : -1;
+    }
+
+    // Position after the last line break between from and to, -1 if none
+    public static int lastLineEnd(ByteBuffer buffer, int from, int to, boolean endOfInput)
+    {
+	int i = lastIndexOfLineBreak(buffer, from, to);
+
+	// A \r at the end may be followed by a \n not read yet
+	if (i == to - 1 && !endOfInput && buffer.get(i) == CARRIAGE_RETURN)
+	    i = lastIndexOfLineBreak(buffer, from, i);
+
+	return i < 0 ? -1 : i + 1;
+    }
+
+    // Position of the first \n or \r between from and to, -1 if none
+    public static int indexOfLineBreak(ByteBuffer buffer, int from, int to)
+    {
+	boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+	int i = from;
+
+	for (; i + Long.BYTES <= to; i += Long.BYTES)
+	{
+	    long found = lineBreaks(buffer.getLong(i));
+
+	    if (found != 0)
+		return i + (bigEndian ? Long.numberOfLeadingZeros(found) : Long.numberOfTrailingZeros(found)) / Byte.SIZE;
+	}
+
+	for (; i < to; i++)
+	{
+	    if (isLineBreak(buffer.get(i)))
+		return i;
+	}
+
+	return -1;
+    }
+
+    // Position of the last \n or \r between from and to, -1 if none
+    public static int lastIndexOfLineBreak(ByteBuffer buffer, int from, int to)
+    {
+	boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+	int i = to;
+
+	for (; i - Long.BYTES >= from; i -= Long.BYTES)
+	{
+	    long found = lineBreaks(buffer.getLong(i - Long.BYTES));
+
+	    if (found != 0)
+		return i - 1 - (bigEndian ? Long.numberOfTrailingZeros(found) : Long.numberOfLeadingZeros(found)) / Byte.SIZE;
+	}
+
+	for (i--; i >= from; i--)
+	{
+	    if (isLineBreak(buffer.get(i)))
+		return i;
+	}
+
+	return -1;
+    }
+
+    private static boolean isLineBreak(byte value)
+    {
+	return value == LINE_FEED || value == CARRIAGE_RETURN;
+    }
+
+    // High bit set in each byte of the word which is a \n or a \r
+    private static long lineBreaks(long word)
+    {
+	return zeroBytes(word ^ LINE_FEEDS) | zeroBytes(word ^ CARRIAGE_RETURNS);
+    }
+
+    // High bit set in each byte of the word which is zero, without the false
+    // positives of the shorter (word - ONES) & ~word formula
+    private static long zeroBytes(long word)
+    {
+	return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+    }
+}
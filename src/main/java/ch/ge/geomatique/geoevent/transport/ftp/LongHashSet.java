@@ -0,0 +1,135 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+/**
+ * The LongHashSet class is a set of primitive longs kept in one array with
+ * open addressing, so that each value only takes a few bytes instead of a
+ * boxed Long and a hash map entry.
+ */
+public class LongHashSet
+{
+    // Minimum capacity of the table, a power of two
+    static final int MIN_CAPACITY = 16;
+
+    // Values of the set, 0 marks an empty slot
+    private long[] table;
+    // The value 0 can not be kept in the table
+    private boolean containsZero;
+    private int size;
+
+    public LongHashSet(int expectedSize)
+    {
+	table = new long[capacity(expectedSize)];
+    }
+
+    // Add the value, returns false if it was already in the set
+    public boolean add(long value)
+    {
+	if (value == 0)
+	{
+	    if (containsZero)
+		return false;
+
+	    containsZero = true;
+	    size++;
+	    return true;
+	}
+
+	// Keep at least half of the slots empty
+	if (2 * (size + 1) > table.length)
+	    grow();
+
+	int mask = table.length - 1;
+
+	for (int i = slot(value, mask);; i = (i + 1) & mask)
+	{
+	    if (table[i] == value)
+		return false;
+
+	    if (table[i] == 0)
+	    {
+		table[i] = value;
+		size++;
+		return true;
+	    }
+	}
+    }
+
+    public boolean contains(long value)
+    {
+	if (value == 0)
+	    return containsZero;
+
+	int mask = table.length - 1;
+
+	for (int i = slot(value, mask);; i = (i + 1) & mask)
+	{
+	    if (table[i] == value)
+		return true;
+
+	    if (table[i] == 0)
+		return false;
+	}
+    }
+
+    public int size()
+    {
+	return size;
+    }
+
+    // Double the table and add the values again
+    private void grow()
+    {
+	long[] old = table;
+	int mask = old.length * 2 - 1;
+
+	table = new long[old.length * 2];
+
+	for (long value : old)
+	{
+	    if (value == 0)
+		continue;
+
+	    int i = slot(value, mask);
+
+	    while (table[i] != 0)
+		i = (i + 1) & mask;
+
+	    table[i] = value;
+	}
+    }
+
+    // Spread the bits of the value over the index of its first slot
+    private static int slot(long value, int mask)
+    {
+	return (int) ((value * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    // Smallest power of two which keeps half of the slots empty
+    private static int capacity(int expectedSize)
+    {
+	int capacity = MIN_CAPACITY;
+
+	while (capacity < 2L * expectedSize && capacity < 1 << 30)
+	    capacity <<= 1;
+
+	return capacity;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.Consumer;
+
+/**
+ * The MappedFileReader class maps a local file into memory window by window
+ * and sends read-only slices of the windows, which always end on a line
+ * boundary. The file is read by the operating system page cache, without
+ * being copied into the java heap.
+ */
+public class MappedFileReader
+{
+    // Size of the mapped windows, it only grows for lines longer than it
+    private long window;
+
+    public MappedFileReader(long window)
+    {
+	this.window = Math.max(1, window);
+    }
+
+    // Skip the first lines of the file and send the rest to the consumer. The
+    // slices are only valid during the call to the consumer.
+    public void read(FileChannel channel, int numberOfLinesToSkip, Consumer<ByteBuffer> consumer) throws IOException
+    {
+	int linesToSkip = numberOfLinesToSkip;
+	long size = channel.size();
+	long position = 0;
+
+	while (position < size)
+	{
+	    int length = (int) Math.min(window, size - position);
+	    boolean endOfFile = position + length == size;
+	    MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+	    int from = 0;
+
+	    // Skip the first lines
+	    while (linesToSkip > 0 && from < length)
+	    {
+		int end = LineScanner.lineEnd(map, from, length, endOfFile);
+
+		if (end < 0)
+		{
+		    // Keep a \r which may be followed by a \n in the next window
+		    from = map.get(length - 1) == LineScanner.CARRIAGE_RETURN ? length - 1 : length;
+		    break;
+		}
+
+		from = end;
+		linesToSkip--;
+	    }
+
+	    if (linesToSkip > 0)
+	    {
+		// A window holding a single \r can not go further
+		if (from == 0)
+		    grow();
+		position += from;
+		continue;
+	    }
+
+	    // Send the complete lines, or everything left at the end of the file
+	    int to = endOfFile ? length : LineScanner.lastLineEnd(map, from, length, false);
+
+	    if (to <= from)
+	    {
+		// A single line does not fit into the window
+		if (from == 0)
+		    grow();
+		position += from;
+		continue;
+	    }
+
+	    map.position(from);
+	    map.limit(to);
+	    consumer.accept(map.slice());
+	    position += to;
+	}
+    }
+
+    // Double the size of the windows
+    private void grow()
+    {
+	window = Math.min(Integer.MAX_VALUE, window * 2);
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.esri.ges.framework.i18n.BundleLogger;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+
+/**
+ * The PollScheduler class runs the polling task periodically on its own
+ * thread. A cycle never overlaps the previous one : at fixed rate, the ticks
+ * missed while a cycle was running are skipped instead of being run in a
+ * burst, and the following ticks stay aligned on the start time. An exception
+ * thrown by the task is logged and does not stop the scheduler.
+ */
+public class PollScheduler
+{
+    static final BundleLogger LOGGER = BundleLoggerFactory.getLogger(PollScheduler.class);
+    static final long MILLISECOND_NANOS = 1000000L;
+
+    private final ScheduledExecutorService executor;
+    private final Runnable task;
+    // Time between two cycles in milliseconds
+    private volatile long period;
+    // Fixed rate (the period is counted from the start of each cycle) or
+    // fixed delay (the period is counted from the end of each cycle)
+    private final boolean fixedRate;
+    // Bounds of the period in adaptive mode, 0 to keep a fixed period
+    private volatile long minPeriod;
+    private volatile long maxPeriod;
+    // Planned start of the next cycle, in nanoseconds
+    private long nextRun;
+
+    // Statistics
+    private long cycles;
+    private long overruns;
+    private long skippedTicks;
+    private long errors;
+    private long lastLag;
+    private long maxLag;
+    private long lastDuration;
+    private long maxDuration;
+
+    public PollScheduler(String name, Runnable task, long period, boolean fixedRate)
+    {
+	if (period <= 0)
+	    throw new IllegalArgumentException("The polling period must be positive. (period:" + period + ").");
+
+	this.task = task;
+	this.period = period;
+	this.fixedRate = fixedRate;
+	this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+	    Thread thread = new Thread(runnable, name);
+	    thread.setDaemon(true);
+	    return thread;
+	});
+    }
+
+    // Start the first cycle after a random delay between 0 and jitter
+    // milliseconds, so that many transports started together do not poll
+    // at the same time
+    public synchronized void start(long jitter)
+    {
+	long delay = jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0;
+
+	nextRun = System.nanoTime() + delay * MILLISECOND_NANOS;
+	schedule();
+    }
+
+    public void stop()
+    {
+	executor.shutdownNow();
+    }
+
+    // Change the time between two cycles, from the next cycle on
+    public void setPeriod(long period)
+    {
+	if (period > 0)
+	    this.period = period;
+    }
+
+    public long getPeriod()
+    {
+	return period;
+    }
+
+    // Let the period change between minPeriod and maxPeriod with adapt()
+    public void setAdaptive(long minPeriod, long maxPeriod)
+    {
+	if (minPeriod <= 0 || maxPeriod < minPeriod)
+	    throw new IllegalArgumentException("Invalid polling period bounds. (min:" + minPeriod + ", max:" + maxPeriod + ").");
+
+	this.minPeriod = minPeriod;
+	this.maxPeriod = maxPeriod;
+	this.period = Math.min(maxPeriod, Math.max(minPeriod, period));
+    }
+
+    // In adaptive mode, go back to the minimum period after a cycle which
+    // found changes and double the period, up to the maximum, after a cycle
+    // which found nothing
+    public void adapt(boolean changed)
+    {
+	if (minPeriod <= 0)
+	    return;
+
+	if (changed)
+	    period = minPeriod;
+	else
+	    period = Math.min(maxPeriod, period * 2);
+    }
+
+    public synchronized PollStatistics getStatistics()
+    {
+	return new PollStatistics(cycles, overruns, skippedTicks, errors, lastLag, maxLag, lastDuration, maxDuration, period);
+    }
+
+    private void schedule()
+    {
+	if (executor.isShutdown())
+	    return;
+
+	try
+	{
+	    executor.schedule(this::runTask, Math.max(0, nextRun - System.nanoTime()), TimeUnit.NANOSECONDS);
+	} catch (RejectedExecutionException e)
+	{
+	    // The scheduler was stopped by the task itself
+	}
+    }
+
+    private void runTask()
+    {
+	long start = System.nanoTime();
+	boolean failed = false;
+
+	try
+	{
+	    task.run();
+	} catch (RuntimeException | Error e)
+	{
+	    LOGGER.error("UNEXPECTED_ERROR", e);
+	    failed = true;
+	}
+
+	long end = System.nanoTime();
+	long periodNanos = period * MILLISECOND_NANOS;
+
+	synchronized (this)
+	{
+	    long lag = (start - nextRun) / MILLISECOND_NANOS;
+	    long duration = (end - start) / MILLISECOND_NANOS;
+
+	    cycles++;
+	    lastLag = lag;
+	    maxLag = Math.max(maxLag, lag);
+	    lastDuration = duration;
+	    maxDuration = Math.max(maxDuration, duration);
+
+	    if (failed)
+		errors++;
+
+	    if (end - start > periodNanos)
+		overruns++;
+
+	    if (fixedRate)
+	    {
+		// Ticks which passed while the cycle was running are skipped
+		long passedTicks = Math.max(0, (end - nextRun) / periodNanos);
+
+		skippedTicks += passedTicks;
+		nextRun += (passedTicks + 1) * periodNanos;
+	    } else
+		nextRun = end + periodNanos;
+
+	    schedule();
+	}
+    }
+}
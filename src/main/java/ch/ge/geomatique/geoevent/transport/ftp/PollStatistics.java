@@ -0,0 +1,108 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+/**
+ * The PollStatistics class is a snapshot of the timing of the polling cycles,
+ * used to size the polling interval. Times are in milliseconds.
+ */
+public class PollStatistics
+{
+    // Number of cycles run
+    private final long cycles;
+    // Number of cycles which lasted longer than the period
+    private final long overruns;
+    // Number of ticks skipped because the previous cycle was still running
+    private final long skippedTicks;
+    // Number of cycles which ended with an unexpected exception
+    private final long errors;
+    // Delay between the planned start and the real start of the last cycle
+    private final long lastLag;
+    private final long maxLag;
+    // Duration of the last cycle
+    private final long lastDuration;
+    private final long maxDuration;
+    // Current time between two cycles
+    private final long period;
+
+    public PollStatistics(long cycles, long overruns, long skippedTicks, long errors, long lastLag, long maxLag, long lastDuration, long maxDuration, long period)
+    {
+	this.cycles = cycles;
+	this.overruns = overruns;
+	this.skippedTicks = skippedTicks;
+	this.errors = errors;
+	this.lastLag = lastLag;
+	this.maxLag = maxLag;
+	this.lastDuration = lastDuration;
+	this.maxDuration = maxDuration;
+	this.period = period;
+    }
+
+    public long getCycles()
+    {
+	return cycles;
+    }
+
+    public long getOverruns()
+    {
+	return overruns;
+    }
+
+    public long getSkippedTicks()
+    {
+	return skippedTicks;
+    }
+
+    public long getErrors()
+    {
+	return errors;
+    }
+
+    public long getLastLag()
+    {
+	return lastLag;
+    }
+
+    public long getMaxLag()
+    {
+	return maxLag;
+    }
+
+    public long getLastDuration()
+    {
+	return lastDuration;
+    }
+
+    public long getMaxDuration()
+    {
+	return maxDuration;
+    }
+
+    public long getPeriod()
+    {
+	return period;
+    }
+
+    @Override
+    public String toString()
+    {
+	return "cycles:" + cycles + ",overruns:" + overruns + ",skippedTicks:" + skippedTicks + ",errors:" + errors + ",lastLag:" + lastLag + ",maxLag:" + maxLag
+		+ ",lastDuration:" + lastDuration + ",maxDuration:" + maxDuration + ",period:" + period;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The PollThreads class creates the executors which poll the sources and
+ * download the files. On a Java 21 runtime, they can run each task on its own
+ * virtual thread, so that the blocking (s)ftp calls do not hold an operating
+ * system thread. The virtual threads are reached by reflection, since the
+ * transport is built for Java 8 : on older runtimes, a pool of platform
+ * threads is used instead.
+ */
+public final class PollThreads
+{
+    // Threads of the executors : platform threads or virtual threads
+    static final String PLATFORM_THREADS = "platform";
+    static final String VIRTUAL_THREADS = "virtual";
+
+    private PollThreads()
+    {
+    }
+
+    // Test if the runtime supports the virtual threads
+    public static boolean isVirtualSupported()
+    {
+	return virtualThreadFactory("ftp-transport-probe") != null;
+    }
+
+    // Create an executor running each task on a new virtual thread or, if
+    // virtual is not set or the runtime does not support them, a pool of
+    // platform threads. In both cases at most threads tasks run at the same
+    // time : the other virtual threads wait without holding a carrier thread.
+    public static ExecutorService newExecutor(String name, int threads, boolean virtual)
+    {
+	if (virtual)
+	{
+	    ThreadFactory factory = virtualThreadFactory(name);
+
+	    if (factory != null)
+	    {
+		try
+		{
+		    ExecutorService executor = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+
+		    return new BoundedExecutor(executor, Math.max(1, threads));
+		} catch (ReflectiveOperationException e)
+		{
+		    // Use the platform threads
+		}
+	    }
+	}
+
+	return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+	    Thread thread = new Thread(runnable, name);
+	    thread.setDaemon(true);
+	    return thread;
+	});
+    }
+
+    // Get Thread.ofVirtual().name(name + "-", 0).factory(), null if the
+    // runtime does not support the virtual threads
+    private static ThreadFactory virtualThreadFactory(String name)
+    {
+	try
+	{
+	    Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+	    Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+
+	    builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+
+	    return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+	} catch (ReflectiveOperationException | LinkageError e)
+	{
+	    // Before Java 21, or Java 19 and 20 without the preview features
+	    return null;
+	}
+    }
+
+    /**
+     * Runs each task on a thread of the executor once it gets a permit, so
+     * that no more tasks than permits run at the same time
+     */
+    private static final class BoundedExecutor extends AbstractExecutorService
+    {
+	private final ExecutorService executor;
+	private final Semaphore permits;
+
+	BoundedExecutor(ExecutorService executor, int permits)
+	{
+	    this.executor = executor;
+	    this.permits = new Semaphore(permits);
+	}
+
+	@Override
+	public void execute(Runnable task)
+	{
+	    executor.execute(() -> {
+		boolean acquired = false;
+
+		try
+		{
+		    permits.acquire();
+		    acquired = true;
+		} catch (InterruptedException e)
+		{
+		    // Stopping : the task runs with the interruption and ends at once
+		    Thread.currentThread().interrupt();
+		}
+
+		try
+		{
+		    task.run();
+		} finally
+		{
+		    if (acquired)
+			permits.release();
+		}
+	    });
+	}
+
+	@Override
+	public void shutdown()
+	{
+	    executor.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow()
+	{
+	    return executor.shutdownNow();
+	}
+
+	@Override
+	public boolean isShutdown()
+	{
+	    return executor.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated()
+	{
+	    return executor.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+	{
+	    return executor.awaitTermination(timeout, unit);
+	}
+    }
+}
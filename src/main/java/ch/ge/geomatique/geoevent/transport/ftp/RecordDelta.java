@@ -0,0 +1,187 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The RecordDelta class keeps a 64 bits hash of each line of the last version
+ * of the files delivered, so that only the lines which are new or changed
+ * since that version are sent when a file is delivered again. The line breaks
+ * are not hashed, a line only differing by its line break is not sent again.
+ */
+public class RecordDelta
+{
+    // Maximum number of files whose last version is kept, the least recently
+    // delivered are forgotten first
+    static final int MAX_FILES = 1000;
+    // Expected number of lines of a file delivered for the first time
+    static final int DEFAULT_LINES = 1024;
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+
+    // Hashes of the lines of the last version of each file, by remote path
+    private final Map<String, LongHashSet> versions = new LinkedHashMap<String, LongHashSet>(16, 0.75f, true)
+    {
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected boolean removeEldestEntry(Map.Entry<String, LongHashSet> eldest)
+	{
+	    return size() > MAX_FILES;
+	}
+    };
+
+    // Start the delivery of a new version of the file
+    public synchronized Extraction open(String path)
+    {
+	return new Extraction(path, versions.get(path));
+    }
+
+    // Forget the files which are no longer on the server
+    public synchronized void retain(Set<String> paths)
+    {
+	versions.keySet().retainAll(paths);
+    }
+
+    public synchronized int size()
+    {
+	return versions.size();
+    }
+
+    private synchronized void update(String path, LongHashSet lines)
+    {
+	versions.put(path, lines);
+    }
+
+    // Hash of the bytes between from and to, read 8 bytes at a time
+    static long hash(ByteBuffer buffer, int from, int to)
+    {
+	long hash = PRIME3 + (to - from);
+	int i = from;
+
+	for (; i + Long.BYTES <= to; i += Long.BYTES)
+	    hash = Long.rotateLeft(hash ^ Long.rotateLeft(buffer.getLong(i) * PRIME2, 31) * PRIME1, 27) * PRIME1 + PRIME3;
+
+	for (; i < to; i++)
+	    hash = Long.rotateLeft(hash ^ (buffer.get(i) & 0xFF) * PRIME3, 11) * PRIME1;
+
+	// Mix the last bytes into all the bits
+	hash ^= hash >>> 33;
+	hash *= PRIME2;
+	hash ^= hash >>> 29;
+	hash *= PRIME3;
+	return hash ^ hash >>> 32;
+    }
+
+    /**
+     * The delivery of a new version of a file. The lines of the version
+     * replace the ones of the previous version once the delivery is
+     * committed, a delivery which failed sends the same lines again.
+     */
+    public class Extraction
+    {
+	private final String path;
+	// Lines of the previous version, null when the file is delivered for the first time
+	private final LongHashSet previous;
+	private final LongHashSet current;
+	// The new and changed lines of a chunk, reused for every chunk
+	private ByteBuffer output;
+
+	Extraction(String path, LongHashSet previous)
+	{
+	    this.path = path;
+	    this.previous = previous;
+	    this.current = new LongHashSet(previous != null ? previous.size() : DEFAULT_LINES);
+	}
+
+	// Send the lines of the chunk which were not in the previous version.
+	// The chunk holds complete lines, except for the last line of a file.
+	public void filter(ByteBuffer chunk, Consumer<ByteBuffer> consumer)
+	{
+	    int position = chunk.position();
+	    int limit = chunk.limit();
+
+	    if (previous == null)
+	    {
+		// Every line is new
+		hashLines(chunk, position, limit, null);
+		consumer.accept(chunk);
+		return;
+	    }
+
+	    if (output == null || output.capacity() < limit - position)
+		output = ByteBuffer.allocate(limit - position);
+
+	    output.clear();
+	    hashLines(chunk, position, limit, output);
+	    output.flip();
+
+	    if (output.hasRemaining())
+		consumer.accept(output);
+	}
+
+	// The version was delivered, it is the previous version of the next delivery
+	public void commit()
+	{
+	    update(path, current);
+	}
+
+	// Hash each line and copy the lines which are not in the previous
+	// version into the output
+	private void hashLines(ByteBuffer chunk, int from, int to, ByteBuffer changed)
+	{
+	    int start = from;
+
+	    while (start < to)
+	    {
+		int end = LineScanner.lineEnd(chunk, start, to, true);
+
+		if (end < 0)
+		    end = to;
+
+		// The line without its line break
+		int contentEnd = end;
+
+		while (contentEnd > start && (chunk.get(contentEnd - 1) == LineScanner.LINE_FEED || chunk.get(contentEnd - 1) == LineScanner.CARRIAGE_RETURN))
+		    contentEnd--;
+
+		long hash = hash(chunk, start, contentEnd);
+
+		current.add(hash);
+
+		if (changed != null && !previous.contains(hash))
+		{
+		    ByteBuffer line = chunk.duplicate();
+
+		    line.limit(end).position(start);
+		    changed.put(line);
+		}
+
+		start = end;
+	    }
+	}
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The RecordLog class keeps the changes of a state as records appended to a
+ * log file. The log is replayed when it is opened, and rewritten with the
+ * current state when it holds too many old records. An incomplete last
+ * record, left by a stop while it was written, is dropped.
+ */
+class RecordLog implements Closeable
+{
+    // Minimum number of records in the log before it is rewritten
+    static final int MIN_RECORDS_BEFORE_COMPACT = 1000;
+
+    /**
+     * Reads one record of the log and applies it to the state
+     */
+    interface Reader
+    {
+	void read(DataInputStream input) throws IOException;
+    }
+
+    /**
+     * Writes one record into the log
+     */
+    interface Writer
+    {
+	void write(DataOutputStream output) throws IOException;
+    }
+
+    /**
+     * Writes the current state as records, and returns their number
+     */
+    interface Snapshot
+    {
+	int write(DataOutputStream output) throws IOException;
+    }
+
+    // The log file
+    private final Path file;
+    // Writes the records of the rewritten log
+    private final Snapshot snapshot;
+    // Number of records in the log, including the old ones
+    private int records;
+    private DataOutputStream log;
+
+    // Replay the log with the reader, then open it to append new records
+    RecordLog(Path file, Reader reader, Snapshot snapshot) throws IOException
+    {
+	this.file = file;
+	this.snapshot = snapshot;
+
+	if (load(reader))
+	    compact();
+	else
+	    openLog();
+    }
+
+    // Append a record. The log is rewritten when most of its records are
+    // obsolete, that is when it holds more than twice the live records.
+    void append(Writer record, int liveRecords) throws IOException
+    {
+	if (log == null)
+	    throw new IOException("Record log closed. (file:" + file + ").");
+
+	record.write(log);
+	log.flush();
+	records++;
+
+	if (records > MIN_RECORDS_BEFORE_COMPACT && records > 2 * liveRecords)
+	    compact();
+    }
+
+    // Number of records in the log, including the old ones
+    int getRecords()
+    {
+	return records;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+	if (log != null)
+	{
+	    log.close();
+	    log = null;
+	}
+    }
+
+    // Replay the log. Returns true if it ends with an incomplete record.
+    private boolean load(Reader reader) throws IOException
+    {
+	if (!Files.exists(file))
+	    return false;
+
+	try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+	{
+	    while (true)
+	    {
+		// Stop at the end of the last complete record
+		input.mark(1);
+		if (input.read() < 0)
+		    return false;
+		input.reset();
+
+		reader.read(input);
+		records++;
+	    }
+	} catch (EOFException e)
+	{
+	    // The last record was not completely written
+	    return true;
+	}
+    }
+
+    // Write the current state into a new log which replaces the old one
+    private void compact() throws IOException
+    {
+	close();
+
+	Path temporaryFile = Paths.get(file.toString() + ".tmp");
+
+	try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile))))
+	{
+	    records = snapshot.write(output);
+	}
+
+	Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+	openLog();
+    }
+
+    private void openLog() throws IOException
+    {
+	log = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The RemoteClient interface is implemented by the ftp and sftp clients. A
+ * client keeps its connections open between calls until it is closed.
+ */
+public interface RemoteClient extends Closeable
+{
+    // Download the files accepted by the filter into the local folder, give
+    // each one to the listener as soon as it is downloaded and return them
+    List<RemoteFile> downloadFiles(RemoteFileFilter filter, FileDownloadListener listener) throws IOException;
+
+    // Send the files accepted by the filter to the handler while they are
+    // downloaded, without writing them to the local folder, and return them
+    List<RemoteFile> streamFiles(RemoteFileFilter filter, FileStreamHandler handler) throws IOException;
+
+    // Download the files accepted by the filter into the local folder and
+    // return them
+    default List<RemoteFile> downloadFiles(RemoteFileFilter filter) throws IOException
+    {
+	return downloadFiles(filter, file -> true);
+    }
+
+    // Download the wanted files into the local folder and return their names
+    default List<String> downloadFiles() throws IOException
+    {
+	List<String> fileNames = new ArrayList<>();
+
+	for (RemoteFile file : downloadFiles(RemoteFileFilter.ALL))
+	    fileNames.add(file.getName());
+
+	return fileNames;
+    }
+
+    // Get a value which changes when files are added to, removed from or
+    // renamed in the server folder, without listing it. Returns null if the
+    // server cannot give it.
+    String getFolderFingerprint() throws IOException;
+
+    // Close the pooled connections not in use, the next calls open new ones
+    void closeIdleConnections();
+
+    // Close the pooled connections
+    @Override
+    void close();
+}
@@ -0,0 +1,94 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.Comparator;
+
+/**
+ * The RemoteFile class holds the name and the metadata of a file listed on
+ * the (s)ftp server
+ */
+public class RemoteFile
+{
+    // Checksum of a file which was not downloaded into the local folder
+    public static final long NO_CHECKSUM = -1L;
+    // Order by name
+    public static final Comparator<RemoteFile> BY_NAME = Comparator.comparing(RemoteFile::getName);
+    // Order by modification time, then by name
+    public static final Comparator<RemoteFile> BY_MODIFIED_TIME = Comparator.comparingLong(RemoteFile::getModifiedTime).thenComparing(BY_NAME);
+
+    // File name without the path
+    private final String name;
+    // Size in bytes
+    private final long size;
+    // Last modification time in milliseconds, 0 if unknown
+    private final long modifiedTime;
+    // First 64 bits of the SHA-256 of the bytes downloaded into the local folder, computed during the download
+    private volatile long checksum = NO_CHECKSUM;
+    // Name of the marker file found on the server for this file, null if none
+    private volatile String marker;
+
+    public RemoteFile(String name, long size, long modifiedTime)
+    {
+	this.name = name;
+	this.size = size;
+	this.modifiedTime = modifiedTime;
+    }
+
+    public String getName()
+    {
+	return name;
+    }
+
+    public long getSize()
+    {
+	return size;
+    }
+
+    public long getModifiedTime()
+    {
+	return modifiedTime;
+    }
+
+    public long getChecksum()
+    {
+	return checksum;
+    }
+
+    public void setChecksum(long checksum)
+    {
+	this.checksum = checksum;
+    }
+
+    public String getMarker()
+    {
+	return marker;
+    }
+
+    public void setMarker(String marker)
+    {
+	this.marker = marker;
+    }
+
+    @Override
+    public String toString()
+    {
+	return name + " (size:" + size + ",modified:" + modifiedTime + ")";
+    }
+}
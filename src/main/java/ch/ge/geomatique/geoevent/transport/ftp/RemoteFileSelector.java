@@ -0,0 +1,106 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The RemoteFileSelector class selects the listed files on their name, size
+ * and age. It is applied by the clients while they read the listing, so the
+ * rejected entries are not kept.
+ */
+public class RemoteFileSelector implements RemoteFileFilter
+{
+    // Selector accepting every file
+    public static final RemoteFileSelector ALL = new RemoteFileSelector(null, 0, 0, 0, 0);
+
+    // Regular expression the whole file name must match, null for any name
+    private final Pattern pattern;
+    // Bounds of the size in bytes (0 = no limit)
+    private final long minSize;
+    private final long maxSize;
+    // Bounds of the time in milliseconds since the last modification (0 = no limit)
+    private final long minAge;
+    private final long maxAge;
+    // Suffixes of the files still being uploaded (.part, .tmp...), which are never selected
+    private final List<String> ignoredSuffixes;
+
+    public RemoteFileSelector(Pattern pattern, long minSize, long maxSize, long minAge, long maxAge)
+    {
+	this(pattern, minSize, maxSize, minAge, maxAge, Collections.emptyList());
+    }
+
+    public RemoteFileSelector(Pattern pattern, long minSize, long maxSize, long minAge, long maxAge, List<String> ignoredSuffixes)
+    {
+	this.pattern = pattern;
+	this.minSize = minSize;
+	this.maxSize = maxSize;
+	this.minAge = minAge;
+	this.maxAge = maxAge;
+	this.ignoredSuffixes = ignoredSuffixes;
+    }
+
+    // Copy of this selector also rejecting the names ending with the suffix
+    public RemoteFileSelector withIgnoredSuffix(String suffix)
+    {
+	List<String> suffixes = new ArrayList<>(ignoredSuffixes);
+
+	suffixes.add(suffix);
+	return new RemoteFileSelector(pattern, minSize, maxSize, minAge, maxAge, suffixes);
+    }
+
+    @Override
+    public boolean accept(RemoteFile file)
+    {
+	return accept(file.getName(), file.getSize(), file.getModifiedTime());
+    }
+
+    // Test a listing entry before a remote file is created for it. A file
+    // without modification time (0) is not selected on its age.
+    public boolean accept(String name, long size, long modifiedTime)
+    {
+	if (minSize > 0 && size < minSize)
+	    return false;
+
+	if (maxSize > 0 && size > maxSize)
+	    return false;
+
+	if (modifiedTime > 0 && (minAge > 0 || maxAge > 0))
+	{
+	    long age = System.currentTimeMillis() - modifiedTime;
+
+	    if (minAge > 0 && age < minAge)
+		return false;
+
+	    if (maxAge > 0 && age > maxAge)
+		return false;
+	}
+
+	for (String suffix : ignoredSuffixes)
+	{
+	    if (name.endsWith(suffix))
+		return false;
+	}
+
+	return pattern == null || pattern.matcher(name).matches();
+    }
+}
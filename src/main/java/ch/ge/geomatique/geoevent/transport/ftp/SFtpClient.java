@@ -19,15 +19,22 @@
 package ch.ge.geomatique.geoevent.transport.ftp;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Vector;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.jcraft.jsch.ChannelSftp;
 import com.jcraft.jsch.JSch;
 import com.jcraft.jsch.JSchException;
 import com.jcraft.jsch.Session;
+import com.jcraft.jsch.SftpATTRS;
 import com.jcraft.jsch.SftpException;
+import com.jcraft.jsch.SocketFactory;
 
 /**
  * The SFtpClient class allows to connect to a sftp server and downloads a file
@@ -36,88 +43,415 @@ import com.jcraft.jsch.SftpException;
  * @version 1.1
  * @since 25.03.2021
  */
-public class SFtpClient
+public class SFtpClient extends AbstractRemoteClient<ChannelSftp>
 {
-    // Server name
-    private String server = "";
+    static final long SECOND_MILLISECONDS = 1000L;
+    // Default number of read requests sent without waiting for the answers, as in JSch
+    static final int DEFAULT_BULK_REQUESTS = 16;
+    // Compression algorithms proposed to the server, the best first
+    static final String COMPRESSION = "zlib@openssh.com,zlib,none";
+
     // User name
     private String user = "";
     // User password
     private String password = "";
-    // Folder on the server where the file is stored
-    private String serverFolder = "";
-    // Name of the file that will be downloaded
-    private String fileFormat = "";
-    // Folder where the file will be downloaded
-    private String localFolder = "";
     // The private key used to authenticate into the ssh server
     private String privateKey = "";
     // SFTP port
     private int port;
+    // Time in milliseconds after which the ssh session is reopened (0 = no limit)
+    private long maxLifetime = 0;
+    // Number of read requests sent without waiting for the answers
+    private int bulkRequests = DEFAULT_BULK_REQUESTS;
+    // Ciphers proposed to the server, the preferred first, empty for the JSch default
+    private String ciphers = "";
+    // Compress the data sent by the server
+    private boolean compression;
+
+    // The ssh session shared by the pooled channels
+    private Session session;
+    // Creation time of the ssh session
+    private long sessionCreatedAt;
+    // Number of channels opened on the ssh session
+    private int openChannels;
+    // A thread is opening a new ssh session outside the lock
+    private boolean opening;
+
+    // Guards the session without pinning the carrier of a virtual thread
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when a new ssh session is opened or failed to open
+    private final Condition sessionOpened = lock.newCondition();
 
     public SFtpClient(String server, String user, String password, String serverFolder, String fileFormat, String localFolder, String privateKey, int port)
     {
-	this.server = server;
+	super(server, serverFolder, fileFormat, localFolder);
 	this.user = user;
 	this.password = password;
-	this.serverFolder = serverFolder;
-	this.fileFormat = fileFormat;
-	this.localFolder = localFolder;
 	this.privateKey = privateKey;
 	this.port = port;
     }
 
-    public List<String> downloadFiles() throws IOException
+    // Time in milliseconds after which a channel and its session are reopened (0 = no limit)
+    @Override
+    public void setMaxLifetime(long maxLifetime)
+    {
+	this.maxLifetime = maxLifetime;
+	super.setMaxLifetime(maxLifetime);
+    }
+
+    // Number of read requests sent without waiting for the answers, which
+    // hides the latency of the network on big files
+    public void setBulkRequests(int bulkRequests)
+    {
+	this.bulkRequests = Math.max(1, bulkRequests);
+    }
+
+    // Ciphers proposed to the server, the preferred first, separated by commas
+    public void setCiphers(String ciphers)
+    {
+	this.ciphers = ciphers;
+    }
+
+    public void setCompression(boolean compression)
+    {
+	this.compression = compression;
+    }
+
+    @Override
+    protected String getProtocol()
+    {
+	return "SFTP";
+    }
+
+    @Override
+    protected ChannelSftp connect() throws IOException
+    {
+	try
+	{
+	    // The channel is counted on the session before it is opened
+	    Session sshSession = getSession();
+	    ChannelSftp sftpChannel = null;
+
+	    try
+	    {
+		sftpChannel = (ChannelSftp) sshSession.openChannel("sftp");
+		sftpChannel.connect();
+		sftpChannel.setBulkRequests(bulkRequests);
+	    } catch (JSchException e)
+	    {
+		if (sftpChannel != null)
+		    sftpChannel.disconnect();
+		releaseChannel();
+		throw e;
+	    }
+
+	    return sftpChannel;
+
+	} catch (JSchException e)
+	{
+	    throw new IOException("SFTP Transport Exception error. (server:" + server + ").", e);
+	}
+    }
+
+    @Override
+    protected boolean isAlive(ChannelSftp sftpChannel)
+    {
+	try
+	{
+	    return sftpChannel.isConnected() && sftpChannel.getSession().isConnected() && sftpChannel.pwd() != null;
+	} catch (SftpException | JSchException e)
+	{
+	    return false;
+	}
+    }
+
+    @Override
+    protected void disconnect(ChannelSftp sftpChannel)
+    {
+	sftpChannel.disconnect();
+	releaseChannel();
+    }
+
+    @Override
+    protected String fingerprint(ChannelSftp sftpChannel) throws IOException
+    {
+	try
+	{
+	    SftpATTRS attrs = sftpChannel.stat(getFolderPath());
+	    return attrs.getMTime() + ":" + attrs.getSize();
+
+	} catch (SftpException e)
+	{
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
+
+    @Override
+    protected List<RemoteFile> list(ChannelSftp sftpChannel) throws IOException
+    {
+	List<RemoteFile> remoteFiles = new ArrayList<>();
+
+	try
+	{
+	    // Get list of wanted files, the entries are selected as they are
+	    // read instead of being kept in a list first
+	    sftpChannel.ls(serverFolder + fileFormat, entry -> {
+		SftpATTRS attrs = entry.getAttrs();
+		long modifiedTime = attrs.getMTime() * SECOND_MILLISECONDS;
+
+		if (selector.accept(entry.getFilename(), attrs.getSize(), modifiedTime))
+		    remoteFiles.add(new RemoteFile(entry.getFilename(), attrs.getSize(), modifiedTime));
+
+		return ChannelSftp.LsEntrySelector.CONTINUE;
+	    });
+
+	    return remoteFiles;
+
+	} catch (SftpException e)
+	{
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
+
+    @Override
+    protected List<String> listNames(ChannelSftp sftpChannel, String pattern) throws IOException
+    {
+	List<String> names = new ArrayList<>();
+
+	try
+	{
+	    sftpChannel.ls(serverFolder + pattern, entry -> {
+		names.add(entry.getFilename());
+		return ChannelSftp.LsEntrySelector.CONTINUE;
+	    });
+
+	    return names;
+
+	} catch (SftpException e)
+	{
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
+
+    @Override
+    protected boolean download(ChannelSftp sftpChannel, RemoteFile file) throws IOException
+    {
+	try (OutputStream outputStream = openLocalFile(file))
+	{
+	    sftpChannel.get(serverFolder + file.getName(), outputStream);
+	    return true;
+
+	} catch (SftpException e)
+	{
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
+
+    @Override
+    protected boolean stream(ChannelSftp sftpChannel, RemoteFile file, FileStreamHandler handler) throws IOException
     {
-	Session session = null;
-	ChannelSftp sftpChannel = null;
-	// List of all file names downloaded
-	List<String> fileNames = new ArrayList<>();
+	try (InputStream inputStream = sftpChannel.get(serverFolder + file.getName(), null, handler.getOffset(file)))
+	{
+	    handler.handle(file, inputStream);
+	    return true;
+
+	} catch (SftpException e)
+	{
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
 
+    @Override
+    protected void delete(ChannelSftp sftpChannel, String path) throws IOException
+    {
 	try
 	{
-	    JSch.setConfig("StrictHostKeyChecking", "no");
-	    JSch sshClient = new JSch();
+	    sftpChannel.rm(path);
+
+	} catch (SftpException e)
+	{
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
 
-	    // Connect to the sftp server
-	    if (!privateKey.isEmpty())
-		sshClient.addIdentity(privateKey);
+    @Override
+    protected void rename(ChannelSftp sftpChannel, String from, String to) throws IOException
+    {
+	try
+	{
+	    sftpChannel.rename(from, to);
 
-	    session = sshClient.getSession(user, server, port);
+	} catch (SftpException e)
+	{
+	    throw new IOException(e.getMessage(), e);
+	}
+    }
 
-	    if (!password.isEmpty())
-		session.setPassword(password);
+    // Get the connected ssh session and count a new channel on it. A new
+    // session is opened outside the lock, the other threads wait for it.
+    private Session getSession() throws JSchException, IOException
+    {
+	Session oldSession;
 
-	    session.connect();
+	lock.lock();
+	try
+	{
+	    while (opening)
+		awaitSession();
 
-	    sftpChannel = (ChannelSftp) session.openChannel("sftp");
-	    sftpChannel.connect();
-	    
-	    @SuppressWarnings("unchecked")
-	    // Get list of wanted files
-	    Vector<ChannelSftp.LsEntry> filelist = sftpChannel.ls(serverFolder + fileFormat);
+	    boolean tooOld = maxLifetime > 0 && System.currentTimeMillis() - sessionCreatedAt > maxLifetime;
 
-	    // Download each file in the remote folder
-	    for (ChannelSftp.LsEntry file : filelist)
+	    if (session != null && session.isConnected() && !(tooOld && openChannels == 0))
 	    {
-		sftpChannel.get(serverFolder + file.getFilename(), localFolder + file.getFilename());
-		fileNames.add(file.getFilename());
+		openChannels++;
+		return session;
 	    }
 
-	    return fileNames;
-	    
-	} catch (JSchException | SftpException e)
+	    oldSession = session;
+	    session = null;
+	    opening = true;
+	} finally
+	{
+	    lock.unlock();
+	}
+
+	Session newSession = null;
+
+	try
 	{
-	    throw new IOException("SFTP Transport Exception error. (server:" + server + ").", e);
+	    if (oldSession != null)
+		oldSession.disconnect();
+
+	    newSession = openSession();
+	    return newSession;
 	} finally
 	{
-	    if (sftpChannel != null)
+	    lock.lock();
+	    try
+	    {
+		opening = false;
+		if (newSession != null)
+		{
+		    session = newSession;
+		    sessionCreatedAt = System.currentTimeMillis();
+		    openChannels++;
+		}
+		sessionOpened.signalAll();
+	    } finally
 	    {
-		sftpChannel.disconnect();
+		lock.unlock();
 	    }
+	}
+    }
 
-	    if (session != null)
-		session.disconnect();
+    // Open and connect a new ssh session
+    private Session openSession() throws JSchException
+    {
+	JSch.setConfig("StrictHostKeyChecking", "no");
+	JSch sshClient = new JSch();
+
+	// Connect to the sftp server
+	if (!privateKey.isEmpty())
+	    sshClient.addIdentity(privateKey);
+
+	Session newSession = sshClient.getSession(user, server, port);
+
+	if (!password.isEmpty())
+	    newSession.setPassword(password);
+
+	if (!ciphers.isEmpty())
+	{
+	    newSession.setConfig("cipher.s2c", ciphers);
+	    newSession.setConfig("cipher.c2s", ciphers);
+	}
+
+	if (compression)
+	{
+	    newSession.setConfig("compression.s2c", COMPRESSION);
+	    newSession.setConfig("compression.c2s", COMPRESSION);
+	}
+
+	if (socketBufferSize > 0)
+	    newSession.setSocketFactory(new BufferedSocketFactory(socketBufferSize));
+
+	newSession.connect();
+
+	return newSession;
+    }
+
+    // Forget a channel of the session. The session is closed with its last channel.
+    private void releaseChannel()
+    {
+	Session closedSession = null;
+
+	lock.lock();
+	try
+	{
+	    openChannels--;
+
+	    if (openChannels == 0)
+	    {
+		closedSession = session;
+		session = null;
+	    }
+	} finally
+	{
+	    lock.unlock();
+	}
+
+	if (closedSession != null)
+	    closedSession.disconnect();
+    }
+
+    // Must be called with the lock held
+    private void awaitSession() throws IOException
+    {
+	try
+	{
+	    sessionOpened.await();
+	} catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted while waiting for the ssh session.", e);
+	}
+    }
+
+    /**
+     * Opens the socket of the ssh session with the given buffer sizes. They
+     * are set before the connection so that the TCP window can use them.
+     */
+    private static class BufferedSocketFactory implements SocketFactory
+    {
+	private final int bufferSize;
+
+	BufferedSocketFactory(int bufferSize)
+	{
+	    this.bufferSize = bufferSize;
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException
+	{
+	    Socket socket = new Socket();
+
+	    socket.setReceiveBufferSize(bufferSize);
+	    socket.setSendBufferSize(bufferSize);
+	    socket.setTcpNoDelay(true);
+	    socket.connect(new InetSocketAddress(host, port));
+
+	    return socket;
+	}
+
+	@Override
+	public InputStream getInputStream(Socket socket) throws IOException
+	{
+	    return socket.getInputStream();
+	}
+
+	@Override
+	public OutputStream getOutputStream(Socket socket) throws IOException
+	{
+	    return socket.getOutputStream();
 	}
     }
-}
\ No newline at end of file
+}
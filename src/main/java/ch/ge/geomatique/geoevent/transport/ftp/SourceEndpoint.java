@@ -0,0 +1,149 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The SourceEndpoint class describes a folder polled by the transport in
+ * multi-source mode, written as
+ * serverType://[user@]server[:port]/[serverFolder/]fileFormat[#credentials].
+ * The folder is relative to the login folder, unless it starts with a /
+ * (serverType://server//absolute/folder/fileFormat). The credentials are the
+ * name of the environment variable or the system property holding the
+ * password, so that no password is written in the list of the sources.
+ */
+public class SourceEndpoint
+{
+    static final String FTP = "ftp";
+    static final String SFTP = "sftp";
+    static final int FTP_DEFAULT_PORT = 21;
+    static final int SFTP_DEFAULT_PORT = 22;
+
+    private static final Pattern ENDPOINT = Pattern.compile("(ftp|sftp)://(?:([^@/]+)@)?([^:/#]+)(?::(\\d+))?/([^#]*)(?:#(.+))?");
+    // The endpoints of a list are separated by spaces, commas, semicolons or new lines
+    private static final Pattern SEPARATOR = Pattern.compile("[\\s,;]+");
+
+    // Server type : ftp or sftp
+    private final String serverType;
+    // User name, empty for the user of the transport
+    private final String user;
+    private final String server;
+    private final int port;
+    // Folder on the server, empty or ending with /
+    private final String serverFolder;
+    private final String fileFormat;
+    // Name of the variable holding the password, null for the password of the transport
+    private final String credentials;
+
+    public SourceEndpoint(String serverType, String user, String server, int port, String serverFolder, String fileFormat, String credentials)
+    {
+	this.serverType = serverType;
+	this.user = user;
+	this.server = server;
+	this.port = port;
+	this.serverFolder = serverFolder.isEmpty() || serverFolder.endsWith("/") ? serverFolder : serverFolder + "/";
+	this.fileFormat = fileFormat;
+	this.credentials = credentials;
+    }
+
+    public static SourceEndpoint parse(String endpoint)
+    {
+	Matcher matcher = ENDPOINT.matcher(endpoint.trim());
+
+	if (!matcher.matches())
+	    throw new IllegalArgumentException("Invalid source, expected serverType://[user@]server[:port]/[serverFolder/]fileFormat[#credentials]. (source:" + endpoint + ").");
+
+	String serverType = matcher.group(1);
+	String path = matcher.group(5);
+	int separator = path.lastIndexOf('/');
+	String fileFormat = path.substring(separator + 1);
+
+	if (fileFormat.isEmpty())
+	    throw new IllegalArgumentException("The source has no file format. (source:" + endpoint + ").");
+
+	int port = matcher.group(4) != null ? Integer.parseInt(matcher.group(4)) : serverType.equals(FTP) ? FTP_DEFAULT_PORT : SFTP_DEFAULT_PORT;
+
+	return new SourceEndpoint(serverType, matcher.group(2) != null ? matcher.group(2) : "", matcher.group(3), port, path.substring(0, separator + 1), fileFormat, matcher.group(6));
+    }
+
+    // Parse a list of endpoints
+    public static List<SourceEndpoint> parseList(String endpoints)
+    {
+	List<SourceEndpoint> list = new ArrayList<>();
+
+	for (String endpoint : SEPARATOR.split(endpoints.trim()))
+	{
+	    if (!endpoint.isEmpty())
+		list.add(parse(endpoint));
+	}
+
+	return list;
+    }
+
+    public String getServerType()
+    {
+	return serverType;
+    }
+
+    public String getUser()
+    {
+	return user;
+    }
+
+    public String getServer()
+    {
+	return server;
+    }
+
+    public int getPort()
+    {
+	return port;
+    }
+
+    public String getServerFolder()
+    {
+	return serverFolder;
+    }
+
+    public String getFileFormat()
+    {
+	return fileFormat;
+    }
+
+    public String getCredentials()
+    {
+	return credentials;
+    }
+
+    // Name of the source, without the credentials
+    public String getId()
+    {
+	return serverType + "://" + (user.isEmpty() ? "" : user + "@") + server + ":" + port + "/" + serverFolder + fileFormat;
+    }
+
+    @Override
+    public String toString()
+    {
+	return getId();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The TeeInputStream class copies everything read from a stream into an
+ * output stream, for instance to keep a local copy of a file sent in flight
+ */
+public class TeeInputStream extends FilterInputStream
+{
+    private final OutputStream copy;
+
+    public TeeInputStream(InputStream input, OutputStream copy)
+    {
+	super(input);
+	this.copy = copy;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+	int b = super.read();
+
+	if (b >= 0)
+	    copy.write(b);
+
+	return b;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException
+    {
+	int count = super.read(bytes, offset, length);
+
+	if (count > 0)
+	    copy.write(bytes, offset, count);
+
+	return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException
+    {
+	// Skipped bytes must also be copied
+	byte[] bytes = new byte[(int) Math.min(n, 8192)];
+	int count = read(bytes, 0, bytes.length);
+
+	return Math.max(count, 0);
+    }
+
+    @Override
+    public boolean markSupported()
+    {
+	return false;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The TransportMetrics class counts what a transport does at each polling
+ * cycle. It is updated by the transport and its client and read through JMX
+ * or the getters.
+ */
+public class TransportMetrics implements TransportMetricsMXBean
+{
+    private final AtomicLong cycles = new AtomicLong();
+    private final AtomicLong filesListed = new AtomicLong();
+    private final AtomicLong filesMatched = new AtomicLong();
+    private final AtomicLong filesDownloaded = new AtomicLong();
+    private final AtomicLong filesDelivered = new AtomicLong();
+    // Files downloaded but not delivered, since their content was already delivered
+    private final AtomicLong filesDuplicated = new AtomicLong();
+    private final AtomicLong bytesTransferred = new AtomicLong();
+    // Files being downloaded or waiting to be delivered
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicLong errors = new AtomicLong();
+    // Number of errors by exception class
+    private final Map<String, AtomicLong> errorsByType = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram cycleTime = new LatencyHistogram();
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final LatencyHistogram listingTime = new LatencyHistogram();
+    private final LatencyHistogram downloadTime = new LatencyHistogram();
+    private final LatencyHistogram deliveryTime = new LatencyHistogram();
+
+    // A polling cycle ended
+    public void cycle(long nanos)
+    {
+	cycles.incrementAndGet();
+	cycleTime.record(nanos);
+    }
+
+    // A connection was opened and logged in
+    public void connected(long nanos)
+    {
+	connectTime.record(nanos);
+    }
+
+    // The server folder was listed
+    public void listed(long nanos, int listed, int matched)
+    {
+	listingTime.record(nanos);
+	filesListed.addAndGet(listed);
+	filesMatched.addAndGet(matched);
+    }
+
+    // A file was downloaded
+    public void downloaded(long nanos, long bytes)
+    {
+	downloadTime.record(nanos);
+	filesDownloaded.incrementAndGet();
+	bytesTransferred.addAndGet(bytes);
+    }
+
+    // A file was sent into the geoevent workflow
+    public void delivered(long nanos)
+    {
+	deliveryTime.record(nanos);
+	filesDelivered.incrementAndGet();
+    }
+
+    // A file was not sent, its content was already delivered
+    public void duplicated()
+    {
+	filesDuplicated.incrementAndGet();
+    }
+
+    public void setQueueDepth(int depth)
+    {
+	queueDepth.set(depth);
+    }
+
+    // Count an error by the class of its root cause
+    public void error(Throwable error)
+    {
+	Throwable cause = error;
+
+	while (cause.getCause() != null && cause.getCause() != cause)
+	    cause = cause.getCause();
+
+	errors.incrementAndGet();
+	errorsByType.computeIfAbsent(cause.getClass().getSimpleName(), type -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Override
+    public long getCycles()
+    {
+	return cycles.get();
+    }
+
+    @Override
+    public long getConnections()
+    {
+	return connectTime.getCount();
+    }
+
+    @Override
+    public long getFilesListed()
+    {
+	return filesListed.get();
+    }
+
+    @Override
+    public long getFilesMatched()
+    {
+	return filesMatched.get();
+    }
+
+    // Files listed but not downloaded, since they did not change
+    @Override
+    public long getFilesSkipped()
+    {
+	return filesListed.get() - filesMatched.get();
+    }
+
+    @Override
+    public long getFilesDownloaded()
+    {
+	return filesDownloaded.get();
+    }
+
+    @Override
+    public long getFilesDelivered()
+    {
+	return filesDelivered.get();
+    }
+
+    @Override
+    public long getFilesDuplicated()
+    {
+	return filesDuplicated.get();
+    }
+
+    @Override
+    public long getBytesTransferred()
+    {
+	return bytesTransferred.get();
+    }
+
+    @Override
+    public int getQueueDepth()
+    {
+	return queueDepth.get();
+    }
+
+    @Override
+    public long getErrors()
+    {
+	return errors.get();
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByType()
+    {
+	Map<String, Long> snapshot = new TreeMap<>();
+
+	for (Map.Entry<String, AtomicLong> entry : errorsByType.entrySet())
+	    snapshot.put(entry.getKey(), entry.getValue().get());
+
+	return snapshot;
+    }
+
+    @Override
+    public LatencyStatistics getCycleTime()
+    {
+	return cycleTime.getStatistics();
+    }
+
+    @Override
+    public LatencyStatistics getConnectTime()
+    {
+	return connectTime.getStatistics();
+    }
+
+    @Override
+    public LatencyStatistics getListingTime()
+    {
+	return listingTime.getStatistics();
+    }
+
+    @Override
+    public LatencyStatistics getDownloadTime()
+    {
+	return downloadTime.getStatistics();
+    }
+
+    @Override
+    public LatencyStatistics getDeliveryTime()
+    {
+	return deliveryTime.getStatistics();
+    }
+}
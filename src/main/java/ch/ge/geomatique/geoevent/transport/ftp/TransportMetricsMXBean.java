@@ -0,0 +1,62 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import java.util.Map;
+
+/**
+ * The TransportMetricsMXBean interface is the JMX view of the metrics of a
+ * transport. Times are in milliseconds.
+ */
+public interface TransportMetricsMXBean
+{
+    long getCycles();
+
+    long getConnections();
+
+    long getFilesListed();
+
+    long getFilesMatched();
+
+    long getFilesSkipped();
+
+    long getFilesDownloaded();
+
+    long getFilesDelivered();
+
+    long getFilesDuplicated();
+
+    long getBytesTransferred();
+
+    int getQueueDepth();
+
+    long getErrors();
+
+    Map<String, Long> getErrorsByType();
+
+    LatencyStatistics getCycleTime();
+
+    LatencyStatistics getConnectTime();
+
+    LatencyStatistics getListingTime();
+
+    LatencyStatistics getDownloadTime();
+
+    LatencyStatistics getDeliveryTime();
+}
@@ -0,0 +1,154 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The ConnectionPoolTest class is a Junit test case which checks that the
+ * connections are reused, probed and reopened
+ */
+public class ConnectionPoolTest
+{
+    private ConnectionPool<AtomicInteger> pool;
+
+    // Number of connections created by the factory
+    private int created;
+    // Result of the liveness probe
+    private boolean alive;
+
+    @Before
+    public void setUp() throws Exception
+    {
+	created = 0;
+	alive = true;
+
+	pool = new ConnectionPool<>(new ConnectionPool.Factory<AtomicInteger>()
+	{
+	    @Override
+	    public AtomicInteger create() throws IOException
+	    {
+		return new AtomicInteger(++created);
+	    }
+
+	    @Override
+	    public boolean isAlive(AtomicInteger connection)
+	    {
+		return alive;
+	    }
+
+	    @Override
+	    public void destroy(AtomicInteger connection)
+	    {
+		connection.set(-1);
+	    }
+	});
+    }
+
+    @Test
+    public void testConnectionReused() throws IOException
+    {
+	AtomicInteger first = pool.borrow();
+	pool.release(first);
+
+	AtomicInteger second = pool.borrow();
+
+	assertSame(first, second);
+	assertEquals(1, created);
+    }
+
+    @Test
+    public void testDeadConnectionReopened() throws IOException
+    {
+	pool.setProbeInterval(0);
+
+	AtomicInteger first = pool.borrow();
+	pool.release(first);
+
+	alive = false;
+	AtomicInteger second = pool.borrow();
+
+	assertNotSame(first, second);
+	assertEquals(-1, first.get());
+	assertEquals(1, pool.size());
+    }
+
+    @Test
+    // A connection released just before is reused without probe
+    public void testRecentConnectionNotProbed() throws IOException
+    {
+	AtomicInteger first = pool.borrow();
+	pool.release(first);
+
+	alive = false;
+
+	assertSame(first, pool.borrow());
+    }
+
+    @Test
+    public void testMaxLifetime() throws Exception
+    {
+	pool.setMaxLifetime(1);
+
+	AtomicInteger first = pool.borrow();
+	pool.release(first);
+	Thread.sleep(10);
+
+	AtomicInteger second = pool.borrow();
+
+	assertNotSame(first, second);
+	assertEquals(2, created);
+    }
+
+    @Test
+    public void testClose() throws IOException
+    {
+	AtomicInteger first = pool.borrow();
+	pool.release(first);
+	pool.close();
+
+	assertEquals(-1, first.get());
+	assertEquals(0, pool.size());
+    }
+
+    @Test
+    // The idle connections are closed, the borrowed ones and the pool stay open
+    public void testCloseIdle() throws IOException
+    {
+	pool.setMaxSize(2);
+
+	AtomicInteger first = pool.borrow();
+	AtomicInteger second = pool.borrow();
+	pool.release(first);
+
+	pool.closeIdle();
+
+	assertEquals(-1, first.get());
+	assertEquals(2, second.get());
+	assertEquals(1, pool.size());
+
+	assertEquals(3, pool.borrow().get());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+
+/**
+ * The DecompressionTest class is a Junit test case which checks that the
+ * compressed files are recognized and decompressed while they are read
+ */
+public class DecompressionTest
+{
+    static final String CONTENT = "id,value\n1,a\n2,b\n";
+
+    // Read the whole decompressed content
+    static String read(String fileName, byte[] bytes) throws IOException
+    {
+	ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	try (InputStream input = Decompression.open(fileName, new ByteArrayInputStream(bytes)))
+	{
+	    byte[] buffer = new byte[5];
+	    int count;
+
+	    while ((count = input.read(buffer)) >= 0)
+		output.write(buffer, 0, count);
+	}
+
+	return new String(output.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    static byte[] gzip(String text) throws IOException
+    {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	try (OutputStream output = new GZIPOutputStream(bytes))
+	{
+	    output.write(text.getBytes(StandardCharsets.UTF_8));
+	}
+
+	return bytes.toByteArray();
+    }
+
+    @Test
+    public void testIsCompressed()
+    {
+	assertTrue(Decompression.isCompressed("data.csv.gz"));
+	assertTrue(Decompression.isCompressed("DATA.ZIP"));
+	assertTrue(Decompression.isCompressed("data.zz"));
+	assertFalse(Decompression.isCompressed("data.csv"));
+    }
+
+    @Test
+    public void testGzip() throws IOException
+    {
+	assertEquals(CONTENT, read("data.csv.gz", gzip(CONTENT)));
+    }
+
+    @Test
+    public void testDeflate() throws IOException
+    {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	try (OutputStream output = new DeflaterOutputStream(bytes))
+	{
+	    output.write(CONTENT.getBytes(StandardCharsets.UTF_8));
+	}
+
+	assertEquals(CONTENT, read("data.csv.deflate", bytes.toByteArray()));
+    }
+
+    @Test
+    // The files of the archive are read one after the other, the folders are skipped
+    public void testZipEntries() throws IOException
+    {
+	ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+	try (ZipOutputStream output = new ZipOutputStream(bytes))
+	{
+	    output.putNextEntry(new ZipEntry("folder/"));
+	    output.putNextEntry(new ZipEntry("folder/part1.csv"));
+	    output.write("1,a\n".getBytes(StandardCharsets.UTF_8));
+	    output.putNextEntry(new ZipEntry("part2.csv"));
+	    output.write("2,b\n".getBytes(StandardCharsets.UTF_8));
+	}
+
+	assertEquals("1,a\n2,b\n", read("data.zip", bytes.toByteArray()));
+    }
+
+    @Test
+    public void testNotCompressed() throws IOException
+    {
+	assertEquals(CONTENT, read("data.csv", CONTENT.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The DigestCacheTest class is a Junit test case which checks that the
+ * delivered contents are remembered, also after a restart, within the size
+ * and the time to live of the cache
+ */
+public class DigestCacheTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path cacheFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+	cacheFile = folder.getRoot().toPath().resolve("digests");
+    }
+
+    @Test
+    // Contents of the same size, which a CRC32 could not tell apart, get different digests
+    public void testDigest()
+    {
+	assertEquals(0x0102030405060708L, DigestCache.digest(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9 }));
+	assertEquals(0x2CF24DBA5FB0A30EL, DigestCache.digest(DigestCache.newHash().digest("hello".getBytes(UTF_8))));
+	assertNotEquals(DigestCache.digest(DigestCache.newHash().digest("hello".getBytes(UTF_8))), DigestCache.digest(DigestCache.newHash().digest("hellp".getBytes(UTF_8))));
+    }
+
+    @Test
+    public void testReload() throws IOException
+    {
+	try (DigestCache cache = new DigestCache(cacheFile, 10, 0))
+	{
+	    assertFalse(cache.contains(1));
+
+	    cache.add(1);
+	    cache.add(2);
+
+	    assertTrue(cache.contains(1));
+	}
+
+	try (DigestCache cache = new DigestCache(cacheFile, 10, 0))
+	{
+	    assertEquals(2, cache.size());
+	    assertTrue(cache.contains(1));
+	    assertTrue(cache.contains(2));
+	}
+    }
+
+    @Test
+    // The least recently seen contents are forgotten first
+    public void testMaxEntries() throws IOException
+    {
+	try (DigestCache cache = new DigestCache(cacheFile, 2, 0))
+	{
+	    cache.add(1);
+	    cache.add(2);
+	    cache.add(1);
+	    cache.add(3);
+
+	    assertTrue(cache.contains(1));
+	    assertFalse(cache.contains(2));
+	    assertTrue(cache.contains(3));
+	}
+
+	try (DigestCache cache = new DigestCache(cacheFile, 2, 0))
+	{
+	    assertEquals(2, cache.size());
+	    assertTrue(cache.contains(1));
+	    assertTrue(cache.contains(3));
+	}
+    }
+
+    @Test
+    public void testTimeToLive() throws Exception
+    {
+	try (DigestCache cache = new DigestCache(cacheFile, 10, 50))
+	{
+	    cache.add(1);
+
+	    assertTrue(cache.contains(1));
+	    Thread.sleep(100);
+	    assertFalse(cache.contains(1));
+	}
+    }
+}
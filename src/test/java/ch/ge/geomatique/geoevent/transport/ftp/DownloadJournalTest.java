@@ -0,0 +1,101 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The DownloadJournalTest class is a Junit test case which checks that the
+ * state of the files is found again after a restart
+ */
+public class DownloadJournalTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path journalFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+	journalFile = folder.getRoot().toPath().resolve("journal");
+    }
+
+    @Test
+    public void testReplay() throws IOException
+    {
+	RemoteFile file1 = new RemoteFile("file1.txt", 10, 1000);
+	RemoteFile file2 = new RemoteFile("file2.txt", 20, 2000);
+	RemoteFile file3 = new RemoteFile("file3.txt", 30, 3000);
+
+	try (DownloadJournal journal = new DownloadJournal(journalFile))
+	{
+	    journal.update("/data/file1.txt", file1, DownloadJournal.DOWNLOADING);
+	    journal.update("/data/file2.txt", file2, DownloadJournal.DOWNLOADING);
+	    journal.update("/data/file2.txt", file2, DownloadJournal.STAGED);
+	    journal.update("/data/file3.txt", file3, DownloadJournal.STAGED);
+	    journal.update("/data/file3.txt", file3, DownloadJournal.DELIVERED);
+	    journal.update("/data/file4.txt", file3, DownloadJournal.DELIVERED);
+	    journal.remove("/data/file4.txt");
+	}
+
+	try (DownloadJournal journal = new DownloadJournal(journalFile))
+	{
+	    List<DownloadJournal.Entry> entries = journal.getEntries();
+
+	    assertEquals(3, entries.size());
+	    assertEquals(DownloadJournal.DOWNLOADING, entries.get(0).getState());
+	    assertEquals(DownloadJournal.STAGED, entries.get(1).getState());
+	    assertEquals("file2.txt", entries.get(1).getFile().getName());
+	    assertEquals(20, entries.get(1).getFile().getSize());
+	    assertEquals(2000, entries.get(1).getFile().getModifiedTime());
+	    assertTrue(journal.isDelivered("/data/file3.txt", file3));
+	    // Another version of the file was not delivered
+	    assertFalse(journal.isDelivered("/data/file3.txt", new RemoteFile("file3.txt", 31, 3000)));
+	    assertFalse(journal.isDelivered("/data/file2.txt", file2));
+	}
+    }
+
+    @Test
+    public void testRetain() throws IOException
+    {
+	try (DownloadJournal journal = new DownloadJournal(journalFile))
+	{
+	    journal.update("/data/file1.txt", new RemoteFile("file1.txt", 10, 1000), DownloadJournal.DELIVERED);
+	    journal.update("/data/file2.txt", new RemoteFile("file2.txt", 10, 1000), DownloadJournal.DELIVERED);
+	    journal.retain(Collections.singleton("/data/file1.txt"));
+	}
+
+	try (DownloadJournal journal = new DownloadJournal(journalFile))
+	{
+	    assertEquals(1, journal.size());
+	    assertEquals("/data/file1.txt", journal.getEntries().get(0).getPath());
+	}
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.esri.ges.core.component.RunningState;
+import com.esri.ges.transport.util.XmlTransportDefinition;
+import com.github.stefanbirkner.fakesftpserver.rule.FakeSftpServerRule;
+
+/**
+ * The FTPInboundTransportTest class is a Junit test case which downloads the
+ * files of a sftp server with the transport and delivers them
+ */
+public class FTPInboundTransportTest
+{
+    @Rule
+    public final FakeSftpServerRule sftpServer = new FakeSftpServerRule();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    // Bytes given to the adapter
+    private final StringBuilder received = new StringBuilder();
+
+    // Create a transport reading the csv files of the server folder, with the download journal
+    private FTPInboundTransport createTransport() throws Exception
+    {
+	sftpServer.addUser("user", "password");
+	sftpServer.setPort(2003);
+
+	FTPInboundTransport transport = new FTPInboundTransport(new XmlTransportDefinition(FTPInboundTransport.class.getResourceAsStream("/ftp-inboundtransport-definition.xml")));
+	transport.getProperty("serverType").setValue("sftp");
+	transport.getProperty("server").setValue("localhost");
+	transport.getProperty("port").setValue(2003);
+	transport.getProperty("user").setValue("user");
+	transport.getProperty("password").setValue("password");
+	transport.getProperty("serverFolder").setValue("/data/");
+	transport.getProperty("fileFormat").setValue("*.csv");
+	transport.getProperty("localFolder").setValue(temporaryFolder.getRoot().getPath() + File.separator);
+	transport.getProperty("numberOfLinesToSkip").setValue(0);
+	transport.getProperty("deleteFiles").setValue(true);
+	transport.getProperty("downloadJournal").setValue(true);
+	transport.applyProperties();
+	return transport;
+    }
+
+    @Test
+    // A file whose delivery failed stays in the local folder and is delivered after a restart
+    public void testRecoverFailedDelivery() throws Exception
+    {
+	sftpServer.putFile("/data/a.csv", "1\n2\n", UTF_8);
+
+	FTPInboundTransport failing = createTransport();
+	failing.setTransportListener((buffer, channelId) -> {
+	    throw new IllegalStateException("adapter failure");
+	});
+	failing.downloadFiles();
+	failing.stop();
+
+	assertTrue(Files.exists(Paths.get(temporaryFolder.getRoot().getPath(), "a.csv")));
+
+	FTPInboundTransport restarted = createTransport();
+	restarted.setTransportListener((buffer, channelId) -> {
+	    byte[] bytes = new byte[buffer.remaining()];
+
+	    buffer.get(bytes);
+	    received.append(new String(bytes, UTF_8));
+	});
+	restarted.downloadFiles();
+	restarted.stop();
+
+	assertEquals("1\n2\n", received.toString());
+	assertFalse(Files.exists(Paths.get(temporaryFolder.getRoot().getPath(), "a.csv")));
+    }
+
+    @Test
+    // A failed delivery in multi-source mode only fails the cycle of its source
+    public void testFailedDeliveryInMultiSourceMode() throws Exception
+    {
+	sftpServer.putFile("/data/a.csv", "1\n2\n", UTF_8);
+
+	FTPInboundTransport transport = createTransport();
+	transport.getProperty("sources").setValue("sftp://localhost:2003//data/*.csv");
+	transport.applyProperties();
+	transport.setTransportListener((buffer, channelId) -> {
+	    throw new IllegalStateException("adapter failure");
+	});
+	transport.downloadFiles();
+
+	assertNotEquals(RunningState.ERROR, transport.getRunningState());
+
+	transport.setTransportListener((buffer, channelId) -> {
+	    byte[] bytes = new byte[buffer.remaining()];
+
+	    buffer.get(bytes);
+	    received.append(new String(bytes, UTF_8));
+	});
+	transport.downloadFiles();
+	transport.stop();
+
+	assertEquals("1\n2\n", received.toString());
+    }
+
+    @Test
+    // An error of the connection stops the transport
+    public void testConnectionError() throws Exception
+    {
+	FTPInboundTransport transport = createTransport();
+	transport.getProperty("port").setValue(2009);
+	transport.applyProperties();
+
+	transport.downloadFiles();
+
+	assertEquals(RunningState.ERROR, transport.getRunningState());
+    }
+
+    @Test
+    // An unexpected error is left to the scheduler, which keeps polling
+    public void testUnexpectedError() throws Exception
+    {
+	FTPInboundTransport transport = createTransport();
+	transport.getProperty("sources").setValue("not a source");
+	transport.applyProperties();
+
+	try
+	{
+	    transport.downloadFiles();
+	    fail();
+	} catch (IllegalArgumentException e)
+	{
+	    assertNotEquals(RunningState.ERROR, transport.getRunningState());
+	}
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The FileStateIndexTest class is a Junit test case which checks that the
+ * delivered files are remembered, also after a restart
+ */
+public class FileStateIndexTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path indexFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+	indexFile = folder.getRoot().toPath().resolve("index");
+    }
+
+    @Test
+    public void testChanged() throws IOException
+    {
+	try (FileStateIndex index = new FileStateIndex(indexFile))
+	{
+	    RemoteFile file = new RemoteFile("file1.txt", 10, 1000);
+
+	    assertTrue(index.isChanged("/data/file1.txt", file));
+
+	    index.update("/data/file1.txt", file);
+
+	    assertFalse(index.isChanged("/data/file1.txt", file));
+	    assertTrue(index.isChanged("/data/file1.txt", new RemoteFile("file1.txt", 12, 1000)));
+	    assertTrue(index.isChanged("/data/file1.txt", new RemoteFile("file1.txt", 10, 2000)));
+	}
+    }
+
+    @Test
+    public void testReload() throws IOException
+    {
+	RemoteFile file = new RemoteFile("file1.txt", 10, 1000);
+
+	try (FileStateIndex index = new FileStateIndex(indexFile))
+	{
+	    index.update("/data/file1.txt", file);
+	    index.update("/data/file2.txt", file);
+	    index.retain(Collections.singleton("/data/file1.txt"));
+	}
+
+	try (FileStateIndex index = new FileStateIndex(indexFile))
+	{
+	    assertEquals(1, index.size());
+	    assertFalse(index.isChanged("/data/file1.txt", file));
+	    assertTrue(index.isChanged("/data/file2.txt", file));
+	}
+    }
+}
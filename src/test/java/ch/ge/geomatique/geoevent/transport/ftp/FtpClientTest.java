@@ -20,19 +20,38 @@ package ch.ge.geomatique.geoevent.transport.ftp;
 
 import static org.junit.Assert.*;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockftpserver.core.command.Command;
+import org.mockftpserver.core.session.Session;
 import org.mockftpserver.fake.FakeFtpServer;
 import org.mockftpserver.fake.UserAccount;
+import org.mockftpserver.fake.command.AbstractFakeCommandHandler;
 import org.mockftpserver.fake.filesystem.DirectoryEntry;
 import org.mockftpserver.fake.filesystem.FileEntry;
 import org.mockftpserver.fake.filesystem.FileSystem;
+import org.mockftpserver.fake.filesystem.FileSystemEntry;
 import org.mockftpserver.fake.filesystem.WindowsFakeFileSystem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -104,6 +123,8 @@ public class FtpClientTest
     @After
     public void tearDown() throws Exception
     {
+	ftpClient.close();
+	fakeFtpServer.stop();
     }
 
     @Test
@@ -130,4 +151,388 @@ public class FtpClientTest
 	}
     }
 
+    @Test
+    // The second download reuses the connection opened by the first one
+    public void testDownloadFilesTwice() throws IOException
+    {
+	assertEquals(3, ftpClient.downloadFiles().size());
+	assertEquals(3, ftpClient.downloadFiles().size());
+
+	ftpClient.close();
+    }
+
+    @Test
+    // Only the files accepted by the filter are downloaded, with their metadata
+    public void testDownloadFilesWithFilter() throws IOException
+    {
+	List<RemoteFile> files = ftpClient.downloadFiles(file -> file.getName().equals(fileName2));
+
+	assertEquals(1, files.size());
+	assertEquals(fileName2, files.get(0).getName());
+	assertEquals("content 2".length(), files.get(0).getSize());
+	assertTrue(files.get(0).getModifiedTime() > 0);
+    }
+
+    @Test
+    // Each call downloads the next files of the backlog, in the order, up to the maximum
+    public void testMaxFiles() throws IOException
+    {
+	Set<String> delivered = new HashSet<>();
+	RemoteFileFilter notDelivered = file -> !delivered.contains(file.getName());
+
+	ftpClient.setOrder(RemoteFile.BY_NAME.reversed());
+	ftpClient.setMaxFiles(2);
+
+	List<RemoteFile> files = ftpClient.downloadFiles(notDelivered, file -> delivered.add(file.getName()));
+
+	assertEquals(2, files.size());
+	assertEquals(fileName3, files.get(0).getName());
+	assertEquals(fileName2, files.get(1).getName());
+
+	files = ftpClient.downloadFiles(notDelivered, file -> delivered.add(file.getName()));
+
+	assertEquals(1, files.size());
+	assertEquals(fileName1, files.get(0).getName());
+    }
+
+    @Test
+    // The files rejected by the selector are not downloaded
+    public void testSelector() throws IOException
+    {
+	ftpClient.setSelector(new RemoteFileSelector(Pattern.compile("file[13]\\.txt"), 0, 0, 0, 0));
+
+	List<String> files = ftpClient.downloadFiles();
+
+	assertEquals(2, files.size());
+	assertFalse(files.contains(fileName2));
+    }
+
+    @Test
+    // The received files are moved into the archive folder, the others stay
+    public void testMoveReceivedFiles() throws IOException
+    {
+	fakeFtpServer.getFileSystem().add(new DirectoryEntry(remoteFolder + "\\archive"));
+	ftpClient.setPostAction(AbstractRemoteClient.MOVE_ACTION, "", "archive/");
+
+	ftpClient.downloadFiles(RemoteFileFilter.ALL, file -> !file.getName().equals(fileName2));
+
+	assertTrue(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\archive\\" + fileName1));
+	assertTrue(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\" + fileName2));
+	assertFalse(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\" + fileName3));
+
+	// Only the file which was not received is read again
+	assertEquals(Arrays.asList(fileName2), ftpClient.downloadFiles());
+    }
+
+    @Test
+    // The renamed files are not listed again by a file format matching every name
+    public void testRenameWithBroadFileFormat() throws IOException
+    {
+	FtpClient broadClient = new FtpClient(server, user, password, serverFolder, "*", localFolder, port);
+
+	try
+	{
+	    broadClient.setPostAction(AbstractRemoteClient.RENAME_ACTION, ".done", "");
+
+	    assertEquals(3, broadClient.downloadFiles().size());
+	    assertTrue(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\" + fileName1 + ".done"));
+
+	    // The second cycle finds nothing new instead of renaming file1.txt.done
+	    assertTrue(broadClient.downloadFiles().isEmpty());
+	    assertTrue(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\" + fileName1 + ".done"));
+	}
+	finally
+	{
+	    broadClient.close();
+	}
+    }
+
+    @Test
+    // The files streamed are deleted, and the empty folder is not an error
+    public void testDeleteStreamedFiles() throws IOException
+    {
+	ftpClient.setPostAction(AbstractRemoteClient.DELETE_ACTION, "", "");
+
+	assertEquals(3, ftpClient.streamFiles(RemoteFileFilter.ALL, (file, input) -> {
+	}).size());
+
+	assertFalse(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\" + fileName1));
+	assertTrue(ftpClient.downloadFiles().isEmpty());
+    }
+
+    @Test
+    // The files are sent to the handler without being written in the local folder
+    public void testStreamFiles() throws IOException
+    {
+	Map<String, String> contents = new HashMap<>();
+
+	List<RemoteFile> files = ftpClient.streamFiles(RemoteFileFilter.ALL, (file, input) -> {
+	    ByteArrayOutputStream output = new ByteArrayOutputStream();
+	    byte[] bytes = new byte[1024];
+	    int count;
+
+	    while ((count = input.read(bytes)) > 0)
+		output.write(bytes, 0, count);
+
+	    contents.put(file.getName(), new String(output.toByteArray(), UTF_8));
+	});
+
+	assertEquals(3, files.size());
+	assertEquals("content 1", contents.get(fileName1));
+    }
+
+    @Test
+    // The files are downloaded at the same time and returned in the requested order
+    public void testDownloadFilesInParallel() throws IOException
+    {
+	ExecutorService executor = Executors.newFixedThreadPool(3);
+
+	try
+	{
+	    ftpClient.setParallelism(3, executor);
+	    ftpClient.setOrder(RemoteFile.BY_NAME);
+
+	    List<RemoteFile> files = ftpClient.downloadFiles(RemoteFileFilter.ALL);
+
+	    assertEquals(3, files.size());
+	    assertEquals(fileName1, files.get(0).getName());
+	    assertEquals(fileName2, files.get(1).getName());
+	    assertEquals(fileName3, files.get(2).getName());
+	} finally
+	{
+	    executor.shutdown();
+	}
+    }
+
+    @Test
+    // Each file is given to the listener in order while the next ones are downloaded
+    public void testDownloadAhead() throws IOException
+    {
+	ExecutorService executor = Executors.newSingleThreadExecutor();
+	List<String> received = new ArrayList<>();
+
+	try
+	{
+	    ftpClient.setParallelism(1, executor);
+	    ftpClient.setDownloadAhead(1);
+	    ftpClient.setOrder(RemoteFile.BY_NAME);
+
+	    ftpClient.downloadFiles(RemoteFileFilter.ALL, file -> {
+		assertTrue(new File(localFolder + file.getName()).exists());
+		return received.add(file.getName());
+	    });
+
+	    assertEquals(Arrays.asList(fileName1, fileName2, fileName3), received);
+	} finally
+	{
+	    executor.shutdown();
+	}
+    }
+
+    @Test
+    // With the tuning settings, the files are still listed (LIST, the fake
+    // server does not announce MLST) and downloaded
+    public void testTunedTransfer() throws IOException
+    {
+	ftpClient.setUseMlsd(true);
+	ftpClient.setKeepAlive(1);
+	ftpClient.setAutodetectUTF8(true);
+	ftpClient.setSocketBufferSize(256 * 1024);
+	ftpClient.setBufferSize(64 * 1024);
+
+	List<String> files = ftpClient.downloadFiles();
+
+	assertEquals(3, files.size());
+	for (String fileName : files)
+	    assertTrue("File not downloaded with FTP server", new File(localFolder + fileName).exists());
+    }
+
+    @Test
+    // A compressed file is transferred in binary, so that its bytes are not converted
+    public void testCompressedFileInBinary() throws IOException
+    {
+	FileEntry entry = new FileEntry(remoteFolder + "\\data.csv.gz");
+	entry.setContents(DecompressionTest.gzip(DecompressionTest.CONTENT));
+	fakeFtpServer.getFileSystem().add(entry);
+
+	FtpClient client = new FtpClient(server, user, password, serverFolder, "*.gz", localFolder, port);
+	client.setTransferType(FtpClient.AUTO_TRANSFER);
+	Map<String, String> contents = new HashMap<>();
+
+	try
+	{
+	    client.streamFiles(RemoteFileFilter.ALL, (file, input) -> {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] bytes = new byte[1024];
+		int count;
+
+		while ((count = input.read(bytes)) > 0)
+		    output.write(bytes, 0, count);
+
+		contents.put(file.getName(), DecompressionTest.read(file.getName(), output.toByteArray()));
+	    });
+	} finally
+	{
+	    client.close();
+	}
+
+	assertEquals(DecompressionTest.CONTENT, contents.get("data.csv.gz"));
+    }
+
+    @Test
+    // Only the files with a marker, named after the whole file name or
+    // without its extension, are downloaded
+    public void testMarkerFiles() throws IOException
+    {
+	fakeFtpServer.getFileSystem().add(new FileEntry(remoteFolder + "\\" + fileName1 + ".ok", ""));
+	fakeFtpServer.getFileSystem().add(new FileEntry(remoteFolder + "\\file3.ok", ""));
+	ftpClient.setMarkerSuffix(".ok");
+	ftpClient.setOrder(RemoteFile.BY_NAME);
+
+	assertEquals(Arrays.asList(fileName1, fileName3), ftpClient.downloadFiles());
+    }
+
+    @Test
+    // The markers are never downloaded, and they are deleted with their file
+    public void testDeleteMarkerFiles() throws IOException
+    {
+	FtpClient broadClient = new FtpClient(server, user, password, serverFolder, "*", localFolder, port);
+
+	fakeFtpServer.getFileSystem().add(new FileEntry(remoteFolder + "\\" + fileName1 + ".ok", ""));
+	fakeFtpServer.getFileSystem().add(new FileEntry(remoteFolder + "\\file3.ok", ""));
+
+	try
+	{
+	    broadClient.setMarkerSuffix(".ok");
+	    broadClient.setOrder(RemoteFile.BY_NAME);
+	    broadClient.setPostAction(AbstractRemoteClient.DELETE_ACTION, "", "");
+
+	    assertEquals(Arrays.asList(fileName1, fileName3), broadClient.downloadFiles());
+
+	    assertFalse(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\" + fileName1 + ".ok"));
+	    assertFalse(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\file3.ok"));
+	    assertTrue(fakeFtpServer.getFileSystem().exists(remoteFolder + "\\" + fileName2));
+	}
+	finally
+	{
+	    broadClient.close();
+	}
+    }
+
+    @Test
+    // The files of a handler resuming them at an offset are transferred in
+    // binary, even with the ascii transfer type, so their line endings keep
+    // their size
+    public void testResumableStreamInBinary() throws IOException
+    {
+	fakeFtpServer.getFileSystem().add(new FileEntry(remoteFolder + "\\lines.log", "line 1\r\nline 2\r\n"));
+	FtpClient logClient = new FtpClient(server, user, password, serverFolder, "lines.log", localFolder, port);
+	ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	try
+	{
+	    logClient.setTransferType(FtpClient.ASCII_TRANSFER);
+	    logClient.streamFiles(RemoteFileFilter.ALL, new FileStreamHandler()
+	    {
+		@Override
+		public boolean isResumable()
+		{
+		    return true;
+		}
+
+		@Override
+		public void handle(RemoteFile file, InputStream input) throws IOException
+		{
+		    byte[] bytes = new byte[1024];
+		    int count;
+
+		    while ((count = input.read(bytes)) > 0)
+			output.write(bytes, 0, count);
+		}
+	    });
+
+	    assertEquals("line 1\r\nline 2\r\n", new String(output.toByteArray(), UTF_8));
+	}
+	finally
+	{
+	    logClient.close();
+	}
+    }
+
+    @Test
+    // With a server announcing MLST, the folder is listed with MLSD and the
+    // entries are matched with the file format by the client
+    public void testMlsdListing() throws IOException
+    {
+	MlsdCommandHandler mlsdHandler = new MlsdCommandHandler();
+	Date modified = new Date(1616667330000L);
+	FileEntry file = new FileEntry(remoteFolder + "\\data.txt", "content 42");
+
+	file.setLastModified(modified);
+	fakeFtpServer.getFileSystem().add(file);
+	fakeFtpServer.getFileSystem().add(new FileEntry(remoteFolder + "\\other.csv", "not matched"));
+	fakeFtpServer.getFileSystem().add(new DirectoryEntry(remoteFolder + "\\folder.txt"));
+	fakeFtpServer.setCommandHandler("FEAT", new FeatCommandHandler());
+	fakeFtpServer.setCommandHandler("MLSD", mlsdHandler);
+	ftpClient.setOrder(RemoteFile.BY_NAME);
+
+	List<RemoteFile> files = ftpClient.downloadFiles(RemoteFileFilter.ALL);
+
+	assertTrue(mlsdHandler.listed);
+	assertEquals(4, files.size());
+	assertEquals("data.txt", files.get(0).getName());
+	assertEquals(10, files.get(0).getSize());
+	assertEquals(modified.getTime(), files.get(0).getModifiedTime());
+	assertEquals(fileName1, files.get(1).getName());
+    }
+
+    /**
+     * Announces the MLST feature, and so the MLSD command
+     */
+    private static class FeatCommandHandler extends AbstractFakeCommandHandler
+    {
+	@Override
+	protected void handle(Command command, Session session)
+	{
+	    session.sendReply(211, "Features:\r\n MLST type*;size*;modify*;\r\nEnd");
+	}
+    }
+
+    /**
+     * Lists the entries of a folder with their facts, as the MLSD command
+     */
+    private static class MlsdCommandHandler extends AbstractFakeCommandHandler
+    {
+	private volatile boolean listed;
+
+	@Override
+	protected void handle(Command command, Session session)
+	{
+	    verifyLoggedIn(session);
+
+	    SimpleDateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+	    StringBuilder listing = new StringBuilder();
+
+	    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+	    for (Object item : getFileSystem().listFiles(getRealPath(session, command.getParameter(0))))
+	    {
+		FileSystemEntry entry = (FileSystemEntry) item;
+
+		listing.append("type=").append(entry.isDirectory() ? "dir" : "file");
+		listing.append(";size=").append(entry.getSize());
+		listing.append(";modify=").append(format.format(entry.getLastModified()));
+		listing.append("; ").append(entry.getName()).append("\r\n");
+	    }
+
+	    byte[] bytes = listing.toString().getBytes(UTF_8);
+
+	    sendReply(session, 150);
+	    session.openDataConnection();
+	    session.sendData(bytes, bytes.length);
+	    session.closeDataConnection();
+	    sendReply(session, 226);
+	    listed = true;
+	}
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The LineChunkReaderTest class is a Junit test case which checks that the
+ * chunks end on a line boundary and that the first lines are skipped
+ */
+public class LineChunkReaderTest
+{
+    // Read the text with the given chunk size and return the chunks received
+    private List<String> read(String text, int chunkSize, int numberOfLinesToSkip) throws IOException
+    {
+	List<String> chunks = new ArrayList<>();
+	LineChunkReader reader = new LineChunkReader(chunkSize, false);
+
+	reader.read(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))), numberOfLinesToSkip, chunk -> {
+	    byte[] bytes = new byte[chunk.remaining()];
+	    chunk.get(bytes);
+	    chunks.add(new String(bytes, StandardCharsets.UTF_8));
+	});
+
+	return chunks;
+    }
+
+    @Test
+    public void testChunksEndOnLines() throws IOException
+    {
+	List<String> chunks = read("a,1\nb,2\nc,3\nd,4\n", 10, 0);
+
+	assertEquals(2, chunks.size());
+	assertEquals("a,1\nb,2\n", chunks.get(0));
+	assertEquals("c,3\nd,4\n", chunks.get(1));
+    }
+
+    @Test
+    public void testSkipLines() throws IOException
+    {
+	assertEquals("b,2\nc,3", String.join("", read("header\na,1\nb,2\nc,3", 8, 2)));
+    }
+
+    @Test
+    public void testLongLine() throws IOException
+    {
+	List<String> chunks = read("a very long line\nb\n", 4, 0);
+
+	assertEquals("a very long line\nb\n", String.join("", chunks));
+	for (String chunk : chunks)
+	    assertTrue(chunk.endsWith("\n"));
+    }
+
+    @Test
+    public void testBufferReused() throws IOException
+    {
+	List<ByteBuffer> buffers = new ArrayList<>();
+	LineChunkReader reader = new LineChunkReader(4, true);
+
+	reader.read(Channels.newChannel(new ByteArrayInputStream("a\nb\nc\nd\n".getBytes(StandardCharsets.UTF_8))), 0, buffers::add);
+
+	assertEquals(2, buffers.size());
+	assertSame(buffers.get(0), buffers.get(1));
+	assertTrue(buffers.get(0).isDirect());
+    }
+
+    @Test
+    public void testCompleteLinesOnly() throws IOException
+    {
+	List<String> chunks = new ArrayList<>();
+	LineChunkReader reader = new LineChunkReader(4, false);
+
+	long bytesRead = reader.read(Channels.newChannel(new ByteArrayInputStream("h\na,1\nb,2\nc".getBytes(StandardCharsets.UTF_8))), 1, true, chunk -> {
+	    byte[] bytes = new byte[chunk.remaining()];
+	    chunk.get(bytes);
+	    chunks.add(new String(bytes, StandardCharsets.UTF_8));
+	});
+
+	// The incomplete last line is neither sent nor counted
+	assertEquals("a,1\nb,2\n", String.join("", chunks));
+	assertEquals(10, bytesRead);
+    }
+
+    @Test
+    // A \r\n cut between two reads is neither split between two chunks nor counted as two lines
+    public void testCarriageReturnLineFeed() throws IOException
+    {
+	List<String> chunks = read("h\r\na,1\r\nb,2\r\nc,3\r\n", 4, 1);
+
+	assertEquals("a,1\r\nb,2\r\nc,3\r\n", String.join("", chunks));
+	for (String chunk : chunks)
+	    assertTrue(chunk.endsWith("\r\n"));
+    }
+
+    @Test
+    public void testCarriageReturnOnly() throws IOException
+    {
+	assertEquals("b,2\rc,3\r", String.join("", read("h\ra,1\rb,2\rc,3\r", 4, 2)));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * The LineScannerTest class is a Junit test case which checks that the line
+ * breaks found 8 bytes at a time are the ones found byte by byte
+ */
+public class LineScannerTest
+{
+    private static ByteBuffer wrap(String text)
+    {
+	return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testSameAsByteLoop()
+    {
+	Random random = new Random(42);
+	byte[] values = { 'a', ',', '1', LineScanner.LINE_FEED, LineScanner.CARRIAGE_RETURN, (byte) 0x8A, (byte) 0x0B, 0 };
+
+	for (int length = 0; length < 40; length++)
+	{
+	    for (int round = 0; round < 50; round++)
+	    {
+		byte[] data = new byte[length];
+
+		for (int i = 0; i < length; i++)
+		    data[i] = values[random.nextInt(values.length)];
+
+		for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN })
+		{
+		    ByteBuffer buffer = ByteBuffer.wrap(data).order(order);
+		    int from = length > 0 ? random.nextInt(length) : 0;
+
+		    assertEquals(first(data, from), LineScanner.indexOfLineBreak(buffer, from, length));
+		    assertEquals(last(data, from), LineScanner.lastIndexOfLineBreak(buffer, from, length));
+		}
+	    }
+	}
+    }
+
+    @Test
+    public void testLineEnds()
+    {
+	assertEquals(4, LineScanner.lineEnd(wrap("abc\ndef"), 0, 7, false));
+	assertEquals(5, LineScanner.lineEnd(wrap("abc\r\ndef"), 0, 8, false));
+	assertEquals(4, LineScanner.lineEnd(wrap("abc\rdef"), 0, 7, false));
+	// The \r may be followed by a \n not read yet
+	assertEquals(-1, LineScanner.lineEnd(wrap("abc\r"), 0, 4, false));
+	assertEquals(4, LineScanner.lineEnd(wrap("abc\r"), 0, 4, true));
+
+	assertEquals(9, LineScanner.lastLineEnd(wrap("a\r\nb\r\nc\r\nd"), 0, 10, false));
+	assertEquals(6, LineScanner.lastLineEnd(wrap("a\r\nb\r\nc\r"), 0, 8, false));
+	assertEquals(8, LineScanner.lastLineEnd(wrap("a\r\nb\r\nc\r"), 0, 8, true));
+    }
+
+    @Test
+    public void testSkipLines()
+    {
+	assertEquals(6, LineScanner.skipLines(wrap("h1\nh2\ndata\n"), 0, 11, 2));
+	assertEquals(8, LineScanner.skipLines(wrap("h1\r\nh2\r\ndata\r\n"), 0, 14, 2));
+	assertEquals(6, LineScanner.skipLines(wrap("h1\rh2\rdata\r"), 0, 11, 2));
+	assertEquals(3, LineScanner.skipLines(wrap("h1\n"), 0, 3, 5));
+	assertEquals(0, LineScanner.skipLines(wrap("h1\n"), 0, 3, 0));
+    }
+
+    private static int first(byte[] data, int from)
+    {
+	for (int i = from; i < data.length; i++)
+	{
+	    if (data[i] == LineScanner.LINE_FEED || data[i] == LineScanner.CARRIAGE_RETURN)
+		return i;
+	}
+	return -1;
+    }
+
+    private static int last(byte[] data, int from)
+    {
+	for (int i = data.length - 1; i >= from; i--)
+	{
+	    if (data[i] == LineScanner.LINE_FEED || data[i] == LineScanner.CARRIAGE_RETURN)
+		return i;
+	}
+	return -1;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The MappedFileReaderTest class is a Junit test case which checks that the
+ * mapped windows end on a line boundary and that the first lines are skipped
+ */
+public class MappedFileReaderTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // Write the text into a file, read it with the given window and return the slices received
+    private List<String> read(String text, int window, int numberOfLinesToSkip) throws IOException
+    {
+	Path file = folder.newFile().toPath();
+	Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+
+	List<String> slices = new ArrayList<>();
+
+	try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+	{
+	    new MappedFileReader(window).read(channel, numberOfLinesToSkip, slice -> {
+		assertTrue(slice.isReadOnly());
+		byte[] bytes = new byte[slice.remaining()];
+		slice.get(bytes);
+		slices.add(new String(bytes, StandardCharsets.UTF_8));
+	    });
+	}
+
+	return slices;
+    }
+
+    @Test
+    public void testWindowsEndOnLines() throws IOException
+    {
+	List<String> slices = read("a,1\nb,2\nc,3\nd,4\n", 10, 0);
+
+	assertEquals("a,1\nb,2\nc,3\nd,4\n", String.join("", slices));
+	assertEquals("a,1\nb,2\n", slices.get(0));
+    }
+
+    @Test
+    public void testSkipLinesAcrossWindows() throws IOException
+    {
+	assertEquals("b,2\r\nc,3", String.join("", read("a long header\r\na,1\r\nb,2\r\nc,3", 4, 2)));
+    }
+
+    @Test
+    public void testLongLine() throws IOException
+    {
+	List<String> slices = read("a very long line\nb\n", 4, 0);
+
+	assertEquals("a very long line\nb\n", String.join("", slices));
+	for (String slice : slices)
+	    assertTrue(slice.endsWith("\n"));
+    }
+
+    @Test
+    public void testOnlyHeader() throws IOException
+    {
+	assertTrue(read("header\n", 4, 1).isEmpty());
+    }
+}
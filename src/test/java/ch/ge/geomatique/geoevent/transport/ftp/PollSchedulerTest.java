@@ -0,0 +1,124 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * The PollSchedulerTest class is a Junit test case which checks that the
+ * polling cycles never overlap and survive the errors
+ */
+public class PollSchedulerTest
+{
+    private PollScheduler scheduler;
+
+    @After
+    public void tearDown()
+    {
+	if (scheduler != null)
+	    scheduler.stop();
+    }
+
+    @Test
+    public void testSlowCycleSkipsTicks() throws Exception
+    {
+	AtomicInteger running = new AtomicInteger();
+	AtomicInteger maxRunning = new AtomicInteger();
+	// The statistics of a cycle are recorded after it ends : wait for the fourth one to check three
+	CountDownLatch done = new CountDownLatch(4);
+
+	scheduler = new PollScheduler("test", () -> {
+	    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+	    sleep(120);
+	    running.decrementAndGet();
+	    done.countDown();
+	}, 50, true);
+	scheduler.start(0);
+
+	assertTrue(done.await(5, TimeUnit.SECONDS));
+	PollStatistics statistics = scheduler.getStatistics();
+
+	assertEquals(1, maxRunning.get());
+	assertTrue(statistics.getCycles() >= 3);
+	assertTrue(statistics.getOverruns() >= 3);
+	assertTrue(statistics.getSkippedTicks() >= 3);
+    }
+
+    @Test
+    public void testErrorDoesNotStopScheduler() throws Exception
+    {
+	CountDownLatch done = new CountDownLatch(3);
+
+	scheduler = new PollScheduler("test", () -> {
+	    done.countDown();
+	    throw new IllegalStateException("test");
+	}, 10, false);
+	scheduler.start(0);
+
+	assertTrue(done.await(5, TimeUnit.SECONDS));
+	assertTrue(scheduler.getStatistics().getErrors() >= 2);
+    }
+
+    @Test
+    public void testAdaptivePeriod()
+    {
+	scheduler = new PollScheduler("test", () -> {
+	}, 5000, true);
+	scheduler.setAdaptive(1000, 8000);
+
+	scheduler.adapt(false);
+	assertEquals(8000, scheduler.getPeriod());
+
+	scheduler.adapt(true);
+	assertEquals(1000, scheduler.getPeriod());
+
+	scheduler.adapt(false);
+	scheduler.adapt(false);
+	assertEquals(4000, scheduler.getPeriod());
+
+	scheduler.adapt(false);
+	scheduler.adapt(false);
+	assertEquals(8000, scheduler.getPeriod());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPeriod()
+    {
+	new PollScheduler("test", () -> {
+	}, 0, true);
+    }
+
+    private static void sleep(long milliseconds)
+    {
+	try
+	{
+	    Thread.sleep(milliseconds);
+	} catch (InterruptedException e)
+	{
+	    Thread.currentThread().interrupt();
+	}
+    }
+}
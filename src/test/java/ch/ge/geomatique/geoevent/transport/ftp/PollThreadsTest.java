@@ -0,0 +1,114 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * The PollThreadsTest class is a Junit test case which checks that the tasks
+ * run on virtual threads when the runtime supports them and on platform
+ * threads otherwise, never more of them at the same time than the threads
+ */
+public class PollThreadsTest
+{
+    // Run a task with the executor and get the thread which ran it
+    private static Thread runOn(ExecutorService executor) throws Exception
+    {
+	try
+	{
+	    return executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+	} finally
+	{
+	    executor.shutdown();
+	}
+    }
+
+    private static boolean isVirtual(Thread thread) throws Exception
+    {
+	try
+	{
+	    return (Boolean) Thread.class.getMethod("isVirtual").invoke(thread);
+	} catch (NoSuchMethodException e)
+	{
+	    return false;
+	}
+    }
+
+    @Test
+    public void testPlatformThreads() throws Exception
+    {
+	Thread thread = runOn(PollThreads.newExecutor("test-platform", 2, false));
+
+	assertFalse(isVirtual(thread));
+	assertTrue(thread.isDaemon());
+	assertEquals("test-platform", thread.getName());
+    }
+
+    @Test
+    // Virtual threads from Java 21, platform threads before
+    public void testVirtualThreads() throws Exception
+    {
+	Thread thread = runOn(PollThreads.newExecutor("test-virtual", 2, true));
+
+	assertEquals(PollThreads.isVirtualSupported(), isVirtual(thread));
+	assertTrue(thread.getName().startsWith("test-virtual"));
+    }
+
+    @Test
+    // The virtual threads are limited as the platform threads
+    public void testBoundedThreads() throws Exception
+    {
+	ExecutorService executor = PollThreads.newExecutor("test-bounded", 2, true);
+	AtomicInteger running = new AtomicInteger();
+	AtomicInteger maxRunning = new AtomicInteger();
+	CountDownLatch started = new CountDownLatch(2);
+	List<Future<?>> results = new ArrayList<>();
+
+	try
+	{
+	    for (int i = 0; i < 6; i++)
+		results.add(executor.submit(() -> {
+		    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+		    started.countDown();
+		    started.await();
+		    Thread.sleep(20);
+		    running.decrementAndGet();
+		    return null;
+		}));
+
+	    for (Future<?> result : results)
+		result.get(10, TimeUnit.SECONDS);
+	} finally
+	{
+	    executor.shutdown();
+	}
+
+	assertEquals(2, maxRunning.get());
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * The RecordDeltaTest class is a Junit test case which checks that only the
+ * new and changed lines of a file delivered again are sent
+ */
+public class RecordDeltaTest
+{
+    // Deliver a version of the file by chunks and get the lines sent
+    private static String deliver(RecordDelta delta, String path, boolean commit, String... chunks)
+    {
+	StringBuilder sent = new StringBuilder();
+	RecordDelta.Extraction extraction = delta.open(path);
+
+	for (String chunk : chunks)
+	    extraction.filter(ByteBuffer.wrap(chunk.getBytes(StandardCharsets.UTF_8)), buffer -> {
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		sent.append(new String(bytes, StandardCharsets.UTF_8));
+	    });
+
+	if (commit)
+	    extraction.commit();
+
+	return sent.toString();
+    }
+
+    @Test
+    public void testChangedLines()
+    {
+	RecordDelta delta = new RecordDelta();
+
+	assertEquals("p1;10\np2;20\np3;30\n", deliver(delta, "/data/parking.csv", true, "p1;10\np2;20\n", "p3;30\n"));
+	assertEquals("p2;21\np4;40", deliver(delta, "/data/parking.csv", true, "p1;10\np2;21\n", "p3;30\r\np4;40"));
+	assertEquals("p2;20\n", deliver(delta, "/data/parking.csv", true, "p4;40\np3;30\np2;20\n"));
+	assertEquals("", deliver(delta, "/data/parking.csv", true, "p4;40\np3;30\np2;20\n"));
+    }
+
+    @Test
+    public void testNotCommitted()
+    {
+	RecordDelta delta = new RecordDelta();
+
+	deliver(delta, "/data/parking.csv", true, "p1;10\n");
+
+	// A delivery which failed sends the same lines again
+	assertEquals("p1;11\n", deliver(delta, "/data/parking.csv", false, "p1;11\n"));
+	assertEquals("p1;11\n", deliver(delta, "/data/parking.csv", true, "p1;11\n"));
+    }
+
+    @Test
+    public void testRetain()
+    {
+	RecordDelta delta = new RecordDelta();
+
+	deliver(delta, "/data/file1.csv", true, "a\n");
+	deliver(delta, "/data/file2.csv", true, "a\n");
+	delta.retain(Collections.singleton("/data/file1.csv"));
+
+	assertEquals(1, delta.size());
+	assertEquals("", deliver(delta, "/data/file1.csv", true, "a\n"));
+	assertEquals("a\n", deliver(delta, "/data/file2.csv", true, "a\n"));
+    }
+
+    @Test
+    public void testHash()
+    {
+	ByteBuffer buffer = ByteBuffer.wrap("0123456789abcdef0123456789abcdeg".getBytes(StandardCharsets.US_ASCII));
+
+	assertEquals(RecordDelta.hash(buffer, 0, 10), RecordDelta.hash(buffer, 16, 26));
+	assertNotEquals(RecordDelta.hash(buffer, 0, 16), RecordDelta.hash(buffer, 16, 32));
+	assertNotEquals(RecordDelta.hash(buffer, 0, 8), RecordDelta.hash(buffer, 0, 9));
+    }
+
+    @Test
+    public void testLongHashSet()
+    {
+	LongHashSet set = new LongHashSet(0);
+
+	for (long i = -5000; i < 5000; i++)
+	    assertTrue(set.add(i * 31));
+
+	assertFalse(set.add(0));
+	assertFalse(set.add(-155000));
+	assertEquals(10000, set.size());
+	assertTrue(set.contains(0));
+	assertTrue(set.contains(154969));
+	assertFalse(set.contains(154970));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * The RecordLogTest class is a Junit test case which checks that the records
+ * are replayed after a restart, without the record torn by a crash, and that
+ * the log is rewritten once most of its records are obsolete
+ */
+public class RecordLogTest
+{
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path logFile;
+    // State replayed from the log
+    private List<Long> values;
+
+    @Before
+    public void setUp() throws Exception
+    {
+	logFile = folder.getRoot().toPath().resolve("log");
+	values = new ArrayList<>();
+    }
+
+    // Open the log, replaying its records into the values
+    private RecordLog open() throws IOException
+    {
+	values.clear();
+	return new RecordLog(logFile, input -> values.add(input.readLong()), this::write);
+    }
+
+    private int write(DataOutputStream output) throws IOException
+    {
+	for (long value : values)
+	    output.writeLong(value);
+
+	return values.size();
+    }
+
+    private void append(RecordLog log, long value, int liveRecords) throws IOException
+    {
+	values.add(value);
+	log.append(output -> output.writeLong(value), liveRecords);
+    }
+
+    @Test
+    public void testReplay() throws IOException
+    {
+	try (RecordLog log = open())
+	{
+	    append(log, 1, 1);
+	    append(log, 2, 2);
+	}
+
+	try (RecordLog log = open())
+	{
+	    assertEquals(Arrays.asList(1L, 2L), values);
+	    assertEquals(2, log.getRecords());
+	}
+    }
+
+    @Test
+    // The incomplete record written during a crash is dropped
+    public void testIncompleteRecord() throws IOException
+    {
+	try (RecordLog log = open())
+	{
+	    append(log, 1, 1);
+	}
+
+	Files.write(logFile, new byte[] { 0, 20, 'x' }, StandardOpenOption.APPEND);
+
+	try (RecordLog log = open())
+	{
+	    assertEquals(Arrays.asList(1L), values);
+	    assertEquals(8, Files.size(logFile));
+	    append(log, 2, 2);
+	}
+
+	try (RecordLog log = open())
+	{
+	    assertEquals(Arrays.asList(1L, 2L), values);
+	    assertEquals(2, log.getRecords());
+	}
+    }
+
+    @Test
+    // A record appended after the log is closed is an error, not a lost record
+    public void testAppendAfterClose() throws IOException
+    {
+	RecordLog log = open();
+	log.close();
+
+	try
+	{
+	    append(log, 1, 1);
+	    fail();
+	} catch (IOException e)
+	{
+	    assertTrue(e.getMessage().contains("closed"));
+	}
+    }
+
+    @Test
+    // The log only keeps the live records once it is rewritten
+    public void testCompact() throws IOException
+    {
+	try (RecordLog log = open())
+	{
+	    for (int i = 0; i < RecordLog.MIN_RECORDS_BEFORE_COMPACT; i++)
+		log.append(output -> output.writeLong(1), 1);
+
+	    assertEquals(RecordLog.MIN_RECORDS_BEFORE_COMPACT, log.getRecords());
+
+	    // The state only holds the last value
+	    values.add(7L);
+	    log.append(output -> output.writeLong(7), 1);
+
+	    assertEquals(1, log.getRecords());
+	}
+
+	try (RecordLog log = open())
+	{
+	    assertEquals(Arrays.asList(7L), values);
+	    assertEquals(1, log.getRecords());
+	}
+    }
+}
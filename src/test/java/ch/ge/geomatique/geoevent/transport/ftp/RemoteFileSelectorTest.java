@@ -0,0 +1,81 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * The RemoteFileSelectorTest class is a Junit test case which checks the
+ * selection of the files on their name, size and age
+ */
+public class RemoteFileSelectorTest
+{
+    @Test
+    public void testName()
+    {
+	RemoteFileSelector selector = new RemoteFileSelector(Pattern.compile("data_\\d{8}\\.xml"), 0, 0, 0, 0);
+
+	assertTrue(selector.accept(new RemoteFile("data_20210325.xml", 10, 0)));
+	assertFalse(selector.accept(new RemoteFile("data_2021.xml", 10, 0)));
+	// The whole name must match
+	assertFalse(selector.accept(new RemoteFile("old_data_20210325.xml", 10, 0)));
+    }
+
+    @Test
+    public void testSize()
+    {
+	RemoteFileSelector selector = new RemoteFileSelector(null, 10, 100, 0, 0);
+
+	assertFalse(selector.accept(new RemoteFile("file.txt", 9, 0)));
+	assertTrue(selector.accept(new RemoteFile("file.txt", 10, 0)));
+	assertTrue(selector.accept(new RemoteFile("file.txt", 100, 0)));
+	assertFalse(selector.accept(new RemoteFile("file.txt", 101, 0)));
+    }
+
+    @Test
+    public void testAge()
+    {
+	long now = System.currentTimeMillis();
+	RemoteFileSelector selector = new RemoteFileSelector(null, 0, 0, 60000, 3600000);
+
+	// Still being written
+	assertFalse(selector.accept(new RemoteFile("file.txt", 1, now - 1000)));
+	assertTrue(selector.accept(new RemoteFile("file.txt", 1, now - 600000)));
+	// Too old
+	assertFalse(selector.accept(new RemoteFile("file.txt", 1, now - 7200000)));
+	// Without modification time, the age is not known
+	assertTrue(selector.accept(new RemoteFile("file.txt", 1, 0)));
+    }
+
+    @Test
+    // The files still being uploaded under a temporary name are never selected
+    public void testIgnoredSuffixes()
+    {
+	RemoteFileSelector selector = new RemoteFileSelector(null, 0, 0, 0, 0, Arrays.asList(".part", ".tmp"));
+
+	assertTrue(selector.accept(new RemoteFile("data.csv", 1, 0)));
+	assertFalse(selector.accept(new RemoteFile("data.csv.part", 1, 0)));
+	assertFalse(selector.accept(new RemoteFile("data.tmp", 1, 0)));
+    }
+}
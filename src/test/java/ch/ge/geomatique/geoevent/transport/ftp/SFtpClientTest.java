@@ -20,10 +20,18 @@ package ch.ge.geomatique.geoevent.transport.ftp;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 import org.junit.After;
 import org.junit.Before;
@@ -124,4 +132,228 @@ public class SFtpClientTest
 
     }
 
+    @Test
+    // The files are sent to the handler without being written in the local folder
+    public void testStreamFiles() throws IOException
+    {
+	Map<String, String> contents = new HashMap<>();
+
+	List<RemoteFile> files = SFtpClient.streamFiles(RemoteFileFilter.ALL, (file, input) -> {
+	    ByteArrayOutputStream output = new ByteArrayOutputStream();
+	    byte[] bytes = new byte[1024];
+	    int count;
+
+	    while ((count = input.read(bytes)) > 0)
+		output.write(bytes, 0, count);
+
+	    contents.put(file.getName(), new String(output.toByteArray(), UTF_8));
+	});
+
+	assertEquals(3, files.size());
+	assertEquals("content of file 1", contents.get(fileName1));
+    }
+
+    @Test
+    // The download resumes from the offset given by the handler
+    public void testStreamFilesFromOffset() throws IOException
+    {
+	Map<String, String> contents = new HashMap<>();
+
+	SFtpClient.streamFiles(file -> file.getName().equals(fileName1), new FileStreamHandler()
+	{
+	    @Override
+	    public long getOffset(RemoteFile file)
+	    {
+		return "content of ".length();
+	    }
+
+	    @Override
+	    public void handle(RemoteFile file, InputStream input) throws IOException
+	    {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] bytes = new byte[1024];
+		int count;
+
+		while ((count = input.read(bytes)) > 0)
+		    output.write(bytes, 0, count);
+
+		contents.put(file.getName(), new String(output.toByteArray(), UTF_8));
+	    }
+	});
+
+	assertEquals("file 1", contents.get(fileName1));
+    }
+
+    @Test
+    // The files are downloaded at the same time and returned in the requested order
+    public void testDownloadFilesInParallel() throws IOException
+    {
+	ExecutorService executor = Executors.newFixedThreadPool(3);
+
+	try
+	{
+	    SFtpClient.setParallelism(3, executor);
+	    SFtpClient.setOrder(RemoteFile.BY_NAME);
+
+	    List<RemoteFile> files = SFtpClient.downloadFiles(RemoteFileFilter.ALL);
+
+	    assertEquals(3, files.size());
+	    assertEquals(fileName1, files.get(0).getName());
+	    assertEquals(fileName2, files.get(1).getName());
+	    assertEquals(fileName3, files.get(2).getName());
+	} finally
+	{
+	    executor.shutdown();
+	}
+    }
+
+    @Test
+    // The fingerprint of an unchanged folder is read without listing it and does not move
+    public void testFolderFingerprint() throws IOException
+    {
+	String fingerprint = SFtpClient.getFolderFingerprint();
+
+	assertNotNull(fingerprint);
+	assertEquals(fingerprint, SFtpClient.getFolderFingerprint());
+
+	SFtpClient.close();
+    }
+
+    @Test
+    // The files are still downloaded with the tuned transfer settings
+    public void testTunedTransfer() throws IOException
+    {
+	SFtpClient.setBulkRequests(64);
+	SFtpClient.setCiphers("aes128-ctr,aes128-cbc");
+	SFtpClient.setCompression(true);
+	SFtpClient.setSocketBufferSize(1024 * 1024);
+	SFtpClient.setBufferSize(64 * 1024);
+
+	try
+	{
+	    assertEquals(3, SFtpClient.downloadFiles().size());
+	} finally
+	{
+	    SFtpClient.close();
+	}
+    }
+
+    @Test
+    // The entries rejected by the selector are dropped while the folder is read
+    public void testSelector() throws IOException
+    {
+	// file2.txt is one byte bigger than the others
+	SFtpClient.setSelector(new RemoteFileSelector(Pattern.compile("file\\d\\.txt"), 0, "content of file 1".length(), 0, 0));
+	SFtpClient.setOrder(RemoteFile.BY_NAME);
+
+	try
+	{
+	    List<RemoteFile> files = SFtpClient.downloadFiles(RemoteFileFilter.ALL);
+
+	    assertEquals(2, files.size());
+	    assertEquals(fileName1, files.get(0).getName());
+	    assertEquals(fileName3, files.get(1).getName());
+	} finally
+	{
+	    SFtpClient.close();
+	}
+    }
+
+    @Test
+    // The received files are renamed with the suffix, so they are not read again
+    public void testRenameReceivedFiles() throws IOException
+    {
+	SFtpClient.setPostAction(AbstractRemoteClient.RENAME_ACTION, ".done", "");
+
+	try
+	{
+	    assertEquals(3, SFtpClient.downloadFiles().size());
+	    assertTrue(sftpServer.existsFile("/" + fileName1 + ".done"));
+	    assertFalse(sftpServer.existsFile("/" + fileName1));
+	    assertTrue(SFtpClient.downloadFiles().isEmpty());
+	} finally
+	{
+	    SFtpClient.close();
+	}
+    }
+
+    @Test
+    // The digest of each file is computed while it is downloaded
+    public void testChecksums() throws IOException
+    {
+	long checksum = DigestCache.digest(DigestCache.newHash().digest("content of file 1".getBytes(UTF_8)));
+
+	SFtpClient.setChecksums(true);
+	SFtpClient.setOrder(RemoteFile.BY_NAME);
+
+	try
+	{
+	    List<RemoteFile> files = SFtpClient.downloadFiles(RemoteFileFilter.ALL);
+
+	    assertEquals(3, files.size());
+	    assertEquals(checksum, files.get(0).getChecksum());
+	    assertNotEquals(files.get(0).getChecksum(), files.get(1).getChecksum());
+	} finally
+	{
+	    SFtpClient.close();
+	}
+    }
+
+    @Test
+    // A file is only downloaded once it did not change between two listings
+    public void testStableListing() throws IOException
+    {
+	SFtpClient.setStableListing(true);
+	SFtpClient.setOrder(RemoteFile.BY_NAME);
+
+	try
+	{
+	    assertTrue(SFtpClient.downloadFiles().isEmpty());
+	    assertEquals(3, SFtpClient.downloadFiles().size());
+
+	    // Still being uploaded
+	    sftpServer.putFile("/" + fileName2, "content of file 2 and more", UTF_8);
+	    assertEquals(Arrays.asList(fileName1, fileName3), SFtpClient.downloadFiles());
+	    assertEquals(3, SFtpClient.downloadFiles().size());
+	} finally
+	{
+	    SFtpClient.close();
+	}
+    }
+
+    @Test
+    // A file the journal knows as delivered is post-processed without being
+    // downloaded again, the others leave the journal once post-processed
+    public void testJournal() throws IOException
+    {
+	File journalFile = new File(localFolder + "journal");
+	journalFile.delete();
+
+	try (DownloadJournal journal = new DownloadJournal(journalFile.toPath()))
+	{
+	    SFtpClient.setJournal(journal);
+	    SFtpClient.setOrder(RemoteFile.BY_NAME);
+
+	    // Downloaded but not received
+	    List<RemoteFile> files = SFtpClient.downloadFiles(RemoteFileFilter.ALL, file -> false);
+
+	    assertEquals(3, journal.size());
+	    assertEquals(DownloadJournal.STAGED, journal.getEntries().get(0).getState());
+	    assertFalse(new File(localFolder + fileName1 + AbstractRemoteClient.STAGING_SUFFIX).exists());
+
+	    journal.update(serverFolder + fileName1, files.get(0), DownloadJournal.DELIVERED);
+	    SFtpClient.setPostAction(AbstractRemoteClient.DELETE_ACTION, "", "");
+
+	    List<String> received = new ArrayList<>();
+	    SFtpClient.downloadFiles(RemoteFileFilter.ALL, file -> received.add(file.getName()));
+
+	    assertEquals(Arrays.asList(fileName2, fileName3), received);
+	    assertFalse(sftpServer.existsFile("/" + fileName1));
+	    assertEquals(0, journal.size());
+	} finally
+	{
+	    SFtpClient.close();
+	    journalFile.delete();
+	}
+    }
 }
@@ -0,0 +1,88 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * The SourceEndpointTest class is a Junit test case which checks the parsing
+ * of the sources of the multi-source mode
+ */
+public class SourceEndpointTest
+{
+    @Test
+    public void testFullEndpoint()
+    {
+	SourceEndpoint endpoint = SourceEndpoint.parse("sftp://ingest@partner-a.example.org:2222/outgoing/daily/*.csv#PARTNER_A");
+
+	assertEquals("sftp", endpoint.getServerType());
+	assertEquals("ingest", endpoint.getUser());
+	assertEquals("partner-a.example.org", endpoint.getServer());
+	assertEquals(2222, endpoint.getPort());
+	assertEquals("outgoing/daily/", endpoint.getServerFolder());
+	assertEquals("*.csv", endpoint.getFileFormat());
+	assertEquals("PARTNER_A", endpoint.getCredentials());
+	// The credentials are not part of the name
+	assertEquals("sftp://ingest@partner-a.example.org:2222/outgoing/daily/*.csv", endpoint.getId());
+    }
+
+    @Test
+    public void testDefaults()
+    {
+	SourceEndpoint ftp = SourceEndpoint.parse("ftp://server/*.xml");
+	SourceEndpoint sftp = SourceEndpoint.parse("sftp://server//data/file.txt");
+
+	assertEquals("", ftp.getUser());
+	assertEquals(SourceEndpoint.FTP_DEFAULT_PORT, ftp.getPort());
+	assertEquals("", ftp.getServerFolder());
+	assertNull(ftp.getCredentials());
+
+	assertEquals(SourceEndpoint.SFTP_DEFAULT_PORT, sftp.getPort());
+	// Absolute folder
+	assertEquals("/data/", sftp.getServerFolder());
+	assertEquals("file.txt", sftp.getFileFormat());
+    }
+
+    @Test
+    public void testList()
+    {
+	List<SourceEndpoint> endpoints = SourceEndpoint.parseList(" ftp://a/*.csv, sftp://b/in/*.csv;\nftp://c:2121/out/*.xml ");
+
+	assertEquals(3, endpoints.size());
+	assertEquals("a", endpoints.get(0).getServer());
+	assertEquals("in/", endpoints.get(1).getServerFolder());
+	assertEquals(2121, endpoints.get(2).getPort());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidEndpoint()
+    {
+	SourceEndpoint.parse("http://server/*.csv");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEndpointWithoutFileFormat()
+    {
+	SourceEndpoint.parse("ftp://server/data/");
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * input-ftp-transport
+ *
+ * Copyright (C) 2019 - 2020 République et Canton de Genève
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ch.ge.geomatique.geoevent.transport.ftp;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+/**
+ * The TransportMetricsTest class is a Junit test case which checks the
+ * counters, the latency histograms and their JMX view
+ */
+public class TransportMetricsTest
+{
+    @Test
+    public void testHistogram()
+    {
+	LatencyHistogram histogram = new LatencyHistogram();
+
+	for (int i = 0; i < 99; i++)
+	    histogram.record(TimeUnit.MILLISECONDS.toNanos(1));
+	histogram.record(TimeUnit.SECONDS.toNanos(1));
+
+	LatencyStatistics statistics = histogram.getStatistics();
+
+	assertEquals(100, statistics.getCount());
+	// 1 ms falls into the bucket up to 1024 microseconds
+	assertEquals(1.024, statistics.getP50(), 0.001);
+	assertEquals(1.024, statistics.getP99(), 0.001);
+	assertEquals(1000, statistics.getMax(), 0.001);
+	assertEquals(10.99, statistics.getMean(), 0.001);
+    }
+
+    @Test
+    public void testCounters()
+    {
+	TransportMetrics metrics = new TransportMetrics();
+
+	metrics.listed(1000, 10, 3);
+	metrics.downloaded(1000, 100);
+	metrics.downloaded(1000, 200);
+	metrics.duplicated();
+	metrics.error(new IOException("FTP Transport Exception error.", new SocketTimeoutException()));
+	metrics.error(new IOException("File does not exist."));
+
+	assertEquals(7, metrics.getFilesSkipped());
+	assertEquals(2, metrics.getFilesDownloaded());
+	assertEquals(1, metrics.getFilesDuplicated());
+	assertEquals(300, metrics.getBytesTransferred());
+	assertEquals(2, metrics.getErrors());
+	assertEquals(Long.valueOf(1), metrics.getErrorsByType().get("SocketTimeoutException"));
+	assertEquals(Long.valueOf(1), metrics.getErrorsByType().get("IOException"));
+    }
+
+    @Test
+    public void testJmx() throws Exception
+    {
+	TransportMetrics metrics = new TransportMetrics();
+	MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+	ObjectName name = new ObjectName("ch.ge.geomatique.geoevent.transport.ftp:type=FTPInboundTransport,name=test");
+
+	metrics.cycle(TimeUnit.MILLISECONDS.toNanos(5));
+	server.registerMBean(metrics, name);
+
+	try
+	{
+	    assertEquals(1L, server.getAttribute(name, "Cycles"));
+	    assertEquals(1L, ((CompositeData) server.getAttribute(name, "CycleTime")).get("count"));
+	} finally
+	{
+	    server.unregisterMBean(name);
+	}
+    }
+}